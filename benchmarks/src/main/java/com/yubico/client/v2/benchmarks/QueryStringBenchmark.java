@@ -0,0 +1,89 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.benchmarks;
+
+import com.yubico.client.v2.HttpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the parameters of a validation request with {@link HttpUtils#toQueryString(Map)},
+ * and appending them in order to a reused {@link StringBuilder}, as {@code YubicoClientImpl} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryStringBenchmark {
+
+    private Map<String, String> request;
+    private final StringBuilder query = new StringBuilder(160);
+
+    @Setup
+    public void setup() {
+        request = new TreeMap<String, String>();
+        request.put("id", "4711");
+        request.put("nonce", "0123456789abcdef0123456789abcdef");
+        request.put("otp", "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj");
+        request.put("sl", "secure");
+        request.put("timestamp", "1");
+    }
+
+    @Benchmark
+    public String toQueryString() throws UnsupportedEncodingException {
+        return HttpUtils.toQueryString(request);
+    }
+
+    @Benchmark
+    public int appendParameters() {
+        query.setLength(0);
+        HttpUtils.appendParameter(query, "id", "4711");
+        HttpUtils.appendParameter(query, "nonce", "0123456789abcdef0123456789abcdef");
+        HttpUtils.appendParameter(query, "otp", "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj");
+        HttpUtils.appendParameter(query, "sl", "secure");
+        HttpUtils.appendParameter(query, "timestamp", "1");
+        return query.length();
+    }
+}
@@ -0,0 +1,98 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.benchmarks;
+
+import com.yubico.client.v2.HmacSigner;
+import com.yubico.client.v2.Signature;
+import com.yubico.client.v2.exceptions.YubicoSignatureException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing a typical request query string with {@link Signature#calculate(String, byte[])},
+ * which sets up a new {@link javax.crypto.Mac} each time, against {@link HmacSigner},
+ * which reuses one per thread and key. <code>signerPerLogin</code> creates a new
+ * signer for every signature, as a client created for each JAAS login does.
+ * Run with <code>-prof gc</code> to compare allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    private static final byte[] KEY = new byte[20];
+    private static final String DATA = "id=4711&nonce=0123456789abcdef0123456789abcdef"
+            + "&otp=cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj&timestamp=1";
+
+    private HmacSigner signer;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws UnsupportedEncodingException {
+        signer = new HmacSigner(KEY);
+        buffer = ByteBuffer.wrap(DATA.getBytes("UTF-8"));
+    }
+
+    @Benchmark
+    public String staticCalculate() throws YubicoSignatureException {
+        return Signature.calculate(DATA, KEY);
+    }
+
+    @Benchmark
+    public String signerSign() throws YubicoSignatureException {
+        return signer.sign(DATA);
+    }
+
+    @Benchmark
+    public String signerPerLogin() throws YubicoSignatureException {
+        return new HmacSigner(KEY).sign(DATA);
+    }
+
+    @Benchmark
+    public byte[] signerMacByteBuffer() throws YubicoSignatureException {
+        buffer.rewind();
+        return signer.mac(buffer);
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.benchmarks;
+
+import com.yubico.client.v2.HttpTransport;
+import com.yubico.client.v2.KeepAliveHttpTransport;
+import com.yubico.client.v2.NioHttpTransport;
+import com.yubico.client.v2.StubValidationServer;
+import com.yubico.client.v2.UrlConnectionTransport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips to a local stub validation server through the different
+ * transports. <code>roundTrip</code> runs in sample time mode to get latency
+ * percentiles, and <code>throughput</code> reports round trips per second
+ * along with the <code>handshakes</code> counter, the number of new
+ * connections opened per second.
+ *
+ * <ul>
+ * <li><code>baseline</code>: the request code of version 3.0.5, opening an
+ * {@link HttpURLConnection} and reading the response without closing it</li>
+ * <li><code>url-connection</code>: {@link UrlConnectionTransport}, relying on the JRE keep-alive cache</li>
+ * <li><code>keep-alive</code>: {@link KeepAliveHttpTransport}</li>
+ * <li><code>nio</code>: {@link NioHttpTransport}, with the calling thread waiting
+ * for the selector thread</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final byte[] KEY = new byte[20];
+
+    @Param({"baseline", "url-connection", "keep-alive", "nio"})
+    public String transport;
+
+    private StubValidationServer server;
+    private HttpTransport httpTransport;
+    private URL url;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Connections {
+        public long handshakes;
+        private int seen;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new StubValidationServer(KEY);
+        url = new URL(server.getUrl() + "?id=1&nonce=0123456789abcdef&otp=cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj&timestamp=1");
+        if ("baseline".equals(transport)) {
+            httpTransport = new BaselineTransport();
+        } else if ("url-connection".equals(transport)) {
+            httpTransport = new UrlConnectionTransport();
+        } else if ("nio".equals(transport)) {
+            httpTransport = new NioHttpTransport();
+        } else {
+            httpTransport = new KeepAliveHttpTransport();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        if (httpTransport instanceof KeepAliveHttpTransport) {
+            ((KeepAliveHttpTransport) httpTransport).close();
+        } else if (httpTransport instanceof NioHttpTransport) {
+            ((NioHttpTransport) httpTransport).close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        return request();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int throughput(Connections connections) throws IOException {
+        int length = request();
+        int seen = server.getConnectionCount();
+        connections.handshakes += seen - connections.seen;
+        connections.seen = seen;
+        return length;
+    }
+
+    private int request() throws IOException {
+        InputStream in = httpTransport.get(url, "benchmark", 1000, 1000);
+        int length = 0;
+        while (in.read() != -1) {
+            length++;
+        }
+        if (!(httpTransport instanceof BaselineTransport)) {
+            in.close();
+        }
+        return length;
+    }
+
+    /**
+     * What <code>VerifyTask.getResponseStream</code> did before transports
+     * were pluggable; its caller read the response but never closed it.
+     */
+    private static class BaselineTransport implements HttpTransport {
+        public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestProperty("User-Agent", userAgent);
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(15000);
+            return conn.getInputStream();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.http2;
+
+import com.yubico.client.v2.HttpTransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+
+/**
+ * An {@link HttpTransport} sending requests with a {@link java.net.http.HttpClient}.
+ * Servers supporting HTTP/2, like YubiCloud, get all concurrent requests over
+ * a single connection; others are sent HTTP/1.1 requests over pooled
+ * connections.
+ *
+ * Use it by creating a <code>VerificationRequester</code> with it, or for all
+ * requesters created without a transport by setting the system property
+ * <code>com.yubico.client.v2.transport</code> to
+ * <code>com.yubico.client.v2.http2.Http2Transport</code>.
+ */
+public class Http2Transport implements HttpTransport {
+	private final HttpClient client;
+
+	/**
+	 * Creates a transport with its own {@link HttpClient} preferring HTTP/2.
+	 */
+	public Http2Transport() {
+		this(HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NEVER)
+				.build());
+	}
+
+	/**
+	 * @param client the client to send requests with, for example one with a
+	 * custom <code>SSLContext</code> or executor
+	 */
+	public Http2Transport(HttpClient client) {
+		if (client == null) {
+			throw new IllegalArgumentException("client must not be null.");
+		}
+		this.client = client;
+	}
+
+	/**
+	 * Sends the request and waits for its response. The client has one connect
+	 * timeout for all requests, so the connect and read timeouts are added up
+	 * to a time limit for the whole request.
+	 */
+	public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+		HttpRequest.Builder request;
+		try {
+			request = HttpRequest.newBuilder(url.toURI()).GET();
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid URL for " + url.getHost(), e);
+		}
+		if (userAgent != null) {
+			request.header("User-Agent", userAgent);
+		}
+		if (connectTimeout > 0 && readTimeout > 0) {
+			request.timeout(Duration.ofMillis((long) connectTimeout + readTimeout));
+		}
+
+		HttpResponse<InputStream> response;
+		try {
+			response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+		} catch (HttpTimeoutException e) {
+			SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+			timeout.initCause(e);
+			throw timeout;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException interrupted = new InterruptedIOException("Interrupted while requesting " + url.getHost());
+			interrupted.initCause(e);
+			throw interrupted;
+		}
+		if (response.statusCode() < 200 || response.statusCode() >= 300) {
+			response.body().close();
+			throw new IOException("Server returned HTTP response code: " + response.statusCode() + " from " + url.getHost());
+		}
+		return response.body();
+	}
+}
@@ -0,0 +1,157 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.http2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.yubico.client.v2.ResponseStatus;
+import com.yubico.client.v2.StubValidationServer;
+import com.yubico.client.v2.VerificationFuture;
+import com.yubico.client.v2.VerificationRequester;
+import com.yubico.client.v2.VerificationResponse;
+import com.yubico.client.v2.YubicoClient;
+import com.yubico.client.v2.impl.YubicoClientImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Http2TransportTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    private StubValidationServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    @Test
+    public void testVerifyThroughHttp2Transport() throws Exception {
+        VerificationRequester requester = new VerificationRequester(new Http2Transport());
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        List<VerificationFuture> futures = new ArrayList<VerificationFuture>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.verifyAsync(OTP));
+        }
+        for (VerificationFuture future : futures) {
+            VerificationResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(ResponseStatus.OK, response.getStatus());
+            assertEquals(OTP, response.getOtp());
+        }
+        assertEquals(10, server.getRequestCount());
+        requester.close();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws IOException {
+        Http2Transport transport = new Http2Transport();
+        URL url = new URL(server.getUrl() + "?otp=" + OTP + "&nonce=abc");
+        for (int i = 0; i < 3; i++) {
+            drain(transport.get(url, "test", 1000, 1000));
+        }
+        assertEquals(3, server.getRequestCount());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void testErrorStatus() throws IOException {
+        try {
+            new Http2Transport().get(new URL(server.getUrl().replace("/verify", "/nope")), "test", 1000, 1000);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+    @Test
+    public void testRedirectStatus() throws IOException {
+        HttpServer redirecting = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        redirecting.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Location", server.getUrl());
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        redirecting.start();
+        try {
+            new Http2Transport().get(new URL("http://127.0.0.1:" + redirecting.getAddress().getPort() + "/verify"),
+                    "test", 1000, 1000);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("302"));
+        } finally {
+            redirecting.stop(0);
+        }
+    }
+
+    @Test
+    public void testWithoutUserAgent() throws IOException {
+        drain(new Http2Transport().get(new URL(server.getUrl() + "?otp=" + OTP + "&nonce=abc"), null, 1000, 1000));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testTimeout() throws IOException {
+        server.setDelay(2, TimeUnit.SECONDS);
+        new Http2Transport().get(new URL(server.getUrl() + "?otp=" + OTP), "test", 100, 100);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        while (in.read() != -1) {
+            // discard
+        }
+        in.close();
+    }
+}
@@ -35,6 +35,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
@@ -47,14 +49,15 @@ import javax.security.jacc.PolicyContext;
 import javax.security.jacc.PolicyContextException;
 import javax.servlet.http.HttpServletRequest;
 
+import com.yubico.client.v2.ReplayCache;
 import com.yubico.client.v2.ResponseStatus;
+import com.yubico.client.v2.VerificationFuture;
 import com.yubico.client.v2.VerificationResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.yubico.client.v2.YubicoClient;
-import com.yubico.client.v2.exceptions.YubicoVerificationException;
 import com.yubico.client.v2.exceptions.YubicoValidationFailure;
 
 /**
@@ -76,6 +79,8 @@ public class YubikeyLoginModule implements LoginModule {
 	public static final String OPTION_YUBICO_USERMAP_CLASS  	= "usermap_class";
 	public static final String OPTION_YUBICO_SYNC_POLICY        	= "sync_policy";
 	public static final String OPTION_YUBICO_JACC		 	= "jacc";
+	public static final String OPTION_YUBICO_COALESCE_REQUESTS	= "coalesce_requests";
+	public static final String OPTION_YUBICO_REPLAY_CACHE	= "replay_cache";
 	public static final String JACC_ATTR_WEB_REQUEST_KEY 		= "javax.servlet.http.HttpServletRequest";
 	public static final String HTTP_REQUEST_ATTR_TOTP 		= "j_otp";
 
@@ -94,6 +99,9 @@ public class YubikeyLoginModule implements LoginModule {
 
 	private final Logger log = LoggerFactory.getLogger(YubikeyLoginModule.class);
 
+	/* Recently used OTPs, shared by all logins */
+	private static final ReplayCache replayCache = new ReplayCache(10000, 1, TimeUnit.HOURS);
+
 	private ArrayList<YubikeyPrincipal> principals = new ArrayList<YubikeyPrincipal>();
 
 
@@ -144,7 +152,7 @@ public class YubikeyLoginModule implements LoginModule {
 		/* Yubico verification client */
 		Integer clientId = Integer.parseInt(options.get(OPTION_YUBICO_CLIENT_ID).toString());
         String clientKey = options.get(OPTION_YUBICO_CLIENT_KEY).toString();
-		this.yc = YubicoClient.getClient(clientId, clientKey);
+		this.yc = createClient(clientId, clientKey);
 		
 		/* Realm of principals added after authentication */
 		if (options.containsKey(OPTION_YUBICO_ID_REALM)) {
@@ -176,6 +184,18 @@ public class YubikeyLoginModule implements LoginModule {
 			this.yc.setSync(Integer.parseInt(options.get(OPTION_YUBICO_SYNC_POLICY).toString()));
 		}
 
+		/* Should logins validating the same OTP at the same time share one request? */
+		if (options.containsKey(OPTION_YUBICO_COALESCE_REQUESTS)) {
+			this.yc.setCoalesceRequests("true".equals(options.get(OPTION_YUBICO_COALESCE_REQUESTS).toString()));
+		}
+
+		/* Should recently used OTPs be rejected without asking the validation service? */
+		if (options.containsKey(OPTION_YUBICO_REPLAY_CACHE)) {
+			if ("true".equals(options.get(OPTION_YUBICO_REPLAY_CACHE).toString())) {
+				this.yc.setReplayCache(replayCache);
+			}
+		}
+
 		/* Instantiate the specified usermap implementation. */
                 String usermap_class_name = null;
                 if (options.containsKey(OPTION_YUBICO_USERMAP_CLASS)) {
@@ -242,18 +262,34 @@ public class YubikeyLoginModule implements LoginModule {
 	private boolean validate_otps(List<String> otps, NameCallback nameCb) throws LoginException {
 		boolean validated = false;
 
-		for (String otp : otps) {
-			log.trace("Checking OTP {}", otp);
+		log.trace("Checking OTPs {}", otps);
+
+		/* Validate all OTPs at once, so that several tokens take no longer than one. */
+		Map<String, VerificationFuture> results = this.yc.verifyAll(otps);
 
+		LoginException failure = null;
+		for (Map.Entry<String, VerificationFuture> entry : results.entrySet()) {
+			String otp = entry.getKey();
 			VerificationResponse ykr;
 			try {
-				ykr = this.yc.verify(otp);
-			} catch (YubicoVerificationException e) {
-				log.warn("Errors during validation: ", e);
-				throw new LoginException("Errors during validation: " + e.getMessage());
-			} catch (YubicoValidationFailure e) {
-				log.warn("Something went very wrong during authentication: ", e);
-				throw new LoginException("Something went very wrong during authentication: " + e.getMessage());
+				ykr = entry.getValue().get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof YubicoValidationFailure) {
+					log.warn("Something went very wrong during authentication: ", e.getCause());
+					if (failure == null) {
+						failure = new LoginException("Something went very wrong during authentication: " + e.getCause().getMessage());
+					}
+				} else {
+					log.warn("Errors during validation: ", e.getCause());
+					if (failure == null) {
+						failure = new LoginException("Errors during validation: " + e.getCause().getMessage());
+					}
+				}
+				continue;
+			} catch (InterruptedException e) {
+				/* verifyAll returns completed futures, so this does not wait. */
+				Thread.currentThread().interrupt();
+				throw new LoginException("Interrupted during validation");
 			}
 			if (ykr != null) {
 				log.trace("OTP {} verify result : {}", otp, ykr.getStatus().toString());
@@ -273,9 +309,24 @@ public class YubikeyLoginModule implements LoginModule {
 			}
 		}
 
+		/* Any error fails the login, but only once all OTPs have been consumed. */
+		if (failure != null) {
+			throw failure;
+		}
 		return validated;
 	}
 
+	/**
+	 * Create the client used to validate OTPs.
+	 *
+	 * @param clientId  Yubico API client id
+	 * @param clientKey  Yubico API key
+	 * @return a new YubicoClient
+	 */
+	YubicoClient createClient(Integer clientId, String clientKey) {
+		return YubicoClient.getClient(clientId, clientKey);
+	}
+
 	/**
 	 * After validation of an OTP, check that it came from a YubiKey that actually
 	 * belongs to the user trying to authenticate.
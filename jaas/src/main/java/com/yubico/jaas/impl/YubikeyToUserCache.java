@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2026, Yubico AB.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ *  INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ *  EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ *  TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ *  THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ *  SUCH DAMAGE.
+ */
+package com.yubico.jaas.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of YubiKey owners looked up in a directory, used by
+ * {@link YubikeyToUserLDAPMap}.
+ *
+ * Owners are kept for a time to live, and YubiKeys without an owner for a
+ * separate, usually shorter, one. When an owner is used in the last quarter
+ * of its time to live, it is looked up again in the background while the
+ * cached one is still used, so YubiKeys in frequent use do not wait for the
+ * directory when their entries expire. The least recently used entries are
+ * dropped from a full cache. The cache is split into independently locked
+ * segments, and counts hits, misses and lookups for monitoring.
+ */
+public class YubikeyToUserCache {
+	private static final int SEGMENTS = 16;
+	private static ExecutorService refresher;
+
+	private final Logger log = LoggerFactory.getLogger(YubikeyToUserCache.class);
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final long ttlNanos;
+	private final long negativeTtlNanos;
+	private final Lookup refreshLookup;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Looks up the owner of a YubiKey.
+	 */
+	interface Lookup {
+		/**
+		 * @param publicId YubiKey public ID
+		 * @return the owner's username, or null if the YubiKey has none
+		 * @throws NamingException if the directory could not be searched
+		 */
+		String lookup(String publicId) throws NamingException;
+	}
+
+	/**
+	 * Creates a cache refreshing owners with the lookup given to
+	 * {@link #get(String, Lookup)}, called on a background thread after
+	 * <code>get</code> has returned.
+	 *
+	 * @param maxSize the most YubiKeys to keep, rounded up to a multiple of 16
+	 * since each segment keeps an equal share
+	 * @param ttl how long to keep the owner of a YubiKey
+	 * @param negativeTtl how long to remember that a YubiKey has no owner
+	 * @param unit unit of <code>ttl</code> and <code>negativeTtl</code>
+	 */
+	public YubikeyToUserCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+		this(maxSize, ttl, negativeTtl, unit, null);
+	}
+
+	/**
+	 * Creates a cache refreshing owners with its own lookup, which is only
+	 * ever called by the one background thread.
+	 *
+	 * @param maxSize the most YubiKeys to keep, rounded up to a multiple of 16
+	 * since each segment keeps an equal share
+	 * @param ttl how long to keep the owner of a YubiKey
+	 * @param negativeTtl how long to remember that a YubiKey has no owner
+	 * @param unit unit of <code>ttl</code> and <code>negativeTtl</code>
+	 * @param refreshLookup looks up owners about to expire, or null to use
+	 * the lookup given to {@link #get(String, Lookup)}
+	 */
+	YubikeyToUserCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit, Lookup refreshLookup) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive.");
+		}
+		if (ttl <= 0) {
+			throw new IllegalArgumentException("ttl must be positive.");
+		}
+		if (negativeTtl < 0) {
+			throw new IllegalArgumentException("negativeTtl must not be negative.");
+		}
+		this.ttlNanos = unit.toNanos(ttl);
+		this.negativeTtlNanos = unit.toNanos(negativeTtl);
+		this.refreshLookup = refreshLookup;
+		int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Returns the cached owner of a YubiKey, or looks it up and caches it.
+	 *
+	 * @param publicId YubiKey public ID
+	 * @param lookup looks up owners not in the cache
+	 * @return the owner's username, or null if the YubiKey has none
+	 * @throws NamingException if the owner was looked up and the directory could not be searched
+	 */
+	String get(final String publicId, final Lookup lookup) throws NamingException {
+		long now = System.nanoTime();
+		Segment segment = segmentFor(publicId);
+		Entry entry;
+		boolean refresh = false;
+		synchronized (segment) {
+			entry = segment.get(publicId);
+			if (entry != null && now - entry.expires >= 0) {
+				segment.remove(publicId);
+				entry = null;
+			}
+			if (entry != null && entry.username != null && !entry.refreshing && now - entry.refreshAt >= 0) {
+				entry.refreshing = true;
+				refresh = true;
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			String username = load(publicId, lookup);
+			put(publicId, username);
+			return username;
+		}
+		if (entry.username == null) {
+			negativeHits.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		if (refresh) {
+			final Entry refreshed = entry;
+			final Lookup refreshWith = refreshLookup != null ? refreshLookup : lookup;
+			getRefresher().execute(new Runnable() {
+				public void run() {
+					refreshes.incrementAndGet();
+					try {
+						put(publicId, load(publicId, refreshWith));
+					} catch (NamingException ex) {
+						log.warn("Failed refreshing owner of YubiKey {}: {}", publicId, ex.getMessage());
+					} catch (RuntimeException ex) {
+						failures.incrementAndGet();
+						log.error("Failed refreshing owner of YubiKey {}", publicId, ex);
+					} finally {
+						// A successful refresh has replaced the entry; otherwise the next use retries.
+						refreshed.refreshing = false;
+					}
+				}
+			});
+		}
+		return entry.username;
+	}
+
+	/**
+	 * Removes all entries, so owners are looked up again.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of YubiKeys kept, including expired ones not removed yet
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of times a cached owner was used
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of times a YubiKey was cached as having no owner
+	 */
+	public long getNegativeHits() {
+		return negativeHits.get();
+	}
+
+	/**
+	 * @return the number of times a YubiKey was not in the cache and had to be looked up
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of background lookups of owners about to expire
+	 */
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+
+	/**
+	 * @return the number of lookups that failed
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@Override
+	public String toString() {
+		return "YubikeyToUserCache{size=" + size() + ", hits=" + hits + ", negativeHits=" + negativeHits
+				+ ", misses=" + misses + ", refreshes=" + refreshes + ", failures=" + failures + "}";
+	}
+
+	private String load(String publicId, Lookup lookup) throws NamingException {
+		try {
+			return lookup.lookup(publicId);
+		} catch (NamingException ex) {
+			failures.incrementAndGet();
+			throw ex;
+		}
+	}
+
+	private void put(String publicId, String username) {
+		long now = System.nanoTime();
+		long ttl = username == null ? negativeTtlNanos : ttlNanos;
+		if (ttl == 0) {
+			return;
+		}
+		Entry entry = new Entry(username, now + ttl, now + ttl - ttl / 4);
+		Segment segment = segmentFor(publicId);
+		synchronized (segment) {
+			segment.put(publicId, entry);
+		}
+	}
+
+	private Segment segmentFor(String publicId) {
+		int h = publicId.hashCode();
+		h ^= h >>> 16;
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	private static synchronized ExecutorService getRefresher() {
+		if (refresher == null) {
+			refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "yubico-ldap-refresher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return refresher;
+	}
+
+	private static class Entry {
+		/* Null if the YubiKey has no owner. */
+		final String username;
+		final long expires;
+		final long refreshAt;
+		/* Set under the segment's lock, cleared by a failed refresh. */
+		volatile boolean refreshing;
+
+		Entry(String username, long expires, long refreshAt) {
+			this.username = username;
+			this.expires = expires;
+			this.refreshAt = refreshAt;
+		}
+	}
+
+	private static class Segment extends LinkedHashMap<String, Entry> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(Math.min(maxSize, 64), 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
@@ -0,0 +1,442 @@
+/**
+ * Copyright (c) 2026, Yubico AB.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following
+ *   disclaimer in the documentation and/or other materials provided
+ *   with the distribution.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ *  CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ *  INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ *  MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ *  BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ *  EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ *  TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+ *  TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+ *  THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ *  SUCH DAMAGE.
+ */
+package com.yubico.jaas.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of an id2name text file, mapping YubiKey public IDs to
+ * usernames. The file is read once into a hash map, so a lookup costs a hash
+ * lookup instead of a scan of the file.
+ *
+ * By default every lookup checks the file's modification time and size, and
+ * reads the file again first if they have changed. A file read within the
+ * resolution of its modification time after a change is read again at the
+ * next check, so a later edit of the same size is not missed. With
+ * {@link #setReloadInterval(long)}, lookups do not check the file. A
+ * background thread checks it at the given interval instead, builds a new map
+ * when it has changed and then replaces the old one, which serves lookups in
+ * the meantime.
+ *
+ * YubiKeys are added with {@link #provision(String, String)}, which puts them
+ * in the map at once and appends them to the file through a journal: one
+ * thread at a time writes all lines queued so far, and syncs them to disk
+ * with a single fsync for the whole batch. Until its line is written, a new
+ * key is also added to any map read from the file, so that a reload cannot
+ * give it to another user; a key whose line could not be written is removed.
+ *
+ * One index is shared by all users of the same file, since JAAS creates a
+ * new {@link YubikeyToUserMapImpl} for every login.
+ */
+class YubikeyToUserIndex {
+	/*
+	 * Coarsest modification time resolution of common file systems. A file read
+	 * this soon after it was modified may change again without a new modification
+	 * time, so it is read again at the next check.
+	 */
+	private static final long MODIFIED_RESOLUTION_MILLIS = 2000;
+	private static final ConcurrentMap<String, YubikeyToUserIndex> indexes = new ConcurrentHashMap<String, YubikeyToUserIndex>();
+	private static ScheduledExecutorService reloader;
+
+	private final Logger log = LoggerFactory.getLogger(YubikeyToUserIndex.class);
+	private final File file;
+	/* Replaced, never changed, by reloads; only auto-provisioned keys are added to it. */
+	private volatile Snapshot snapshot;
+	/* Guarded by this. */
+	private ScheduledFuture<?> reloadTask;
+	private long reloadIntervalMillis = 0;
+	/* Keys provisioned but not yet written to the file, guarded by this, as are loads of the file. */
+	private final Map<String, String> provisioning = new HashMap<String, String>();
+
+	/* Lines waiting to be appended, guarded by itself. */
+	private final List<Line> pending = new ArrayList<Line>();
+	private long queued = 0;
+	/* The rest guarded by writeLock, held by the one thread appending a batch. */
+	private final Object writeLock = new Object();
+	private long committed = 0;
+	private FileOutputStream out;
+	private long written = -1;
+
+	private YubikeyToUserIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param filename name of the id2name text file
+	 * @return the index shared by all users of the file
+	 */
+	static YubikeyToUserIndex forFile(String filename) {
+		File file = new File(filename).getAbsoluteFile();
+		YubikeyToUserIndex index = indexes.get(file.getPath());
+		if (index == null) {
+			YubikeyToUserIndex created = new YubikeyToUserIndex(file);
+			index = indexes.putIfAbsent(file.getPath(), created);
+			if (index == null) {
+				index = created;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the user of the first line like "yk.vvcccccfhc.user = alice" for
+	 * the public ID.
+	 *
+	 * @param publicId YubiKey public ID to look up
+	 * @return the username, or null if the file has no line for the public ID
+	 * @throws FileNotFoundException if the file does not exist
+	 */
+	String get(String publicId) throws FileNotFoundException {
+		return current().get(publicId);
+	}
+
+	/**
+	 * Associates a YubiKey with a user, unless it already has an owner. A new
+	 * association is visible to lookups at once, and has been appended to the
+	 * file and synced to disk when this returns.
+	 *
+	 * @param publicId YubiKey public ID
+	 * @param username the user to associate with it
+	 * @return the owner of the YubiKey, which is <code>username</code> unless
+	 * another user got there first
+	 * @throws IOException if the association could not be written to the file
+	 * and synced, in which case it is not made and any part of it already
+	 * written is removed from the file again
+	 */
+	String provision(String publicId, String username) throws IOException {
+		synchronized (this) {
+			Snapshot current = current();
+			String owner = provisioning.get(publicId);
+			if (owner == null && current.usernames != null) {
+				owner = current.usernames.putIfAbsent(publicId, username);
+			}
+			if (owner != null) {
+				return owner;
+			}
+			provisioning.put(publicId, username);
+		}
+		Line line = new Line("yk." + publicId + ".user = " + username + System.getProperty("line.separator"));
+		long sequence;
+		synchronized (pending) {
+			pending.add(line);
+			sequence = ++queued;
+		}
+		try {
+			commit(line, sequence);
+		} catch (IOException ex) {
+			synchronized (this) {
+				provisioning.remove(publicId);
+				Snapshot current = snapshot;
+				if (current != null && current.usernames != null) {
+					current.usernames.remove(publicId, username);
+				}
+			}
+			throw ex;
+		}
+		synchronized (this) {
+			// Any later load reads the line from the file.
+			provisioning.remove(publicId);
+		}
+		return username;
+	}
+
+	/**
+	 * Returns once the line queued as number <code>sequence</code> has been
+	 * written, writing it along with all other queued lines unless another
+	 * thread already did.
+	 *
+	 * @throws IOException if the batch with the line could not be written
+	 */
+	private void commit(Line line, long sequence) throws IOException {
+		synchronized (writeLock) {
+			if (committed >= sequence) {
+				if (line.failure != null) {
+					throw line.failure;
+				}
+				return;
+			}
+			StringBuilder batch = new StringBuilder();
+			List<Line> lines;
+			long last;
+			synchronized (pending) {
+				lines = new ArrayList<Line>(pending);
+				pending.clear();
+				last = queued;
+			}
+			for (Line queuedLine : lines) {
+				batch.append(queuedLine.text);
+			}
+			Snapshot current = snapshot;
+			boolean fresh = current != null && !current.isStale(file);
+			long start = -1;
+			try {
+				if (out == null || file.length() != written) {
+					// First batch, or the file was changed by someone else.
+					closeJournal();
+					out = new FileOutputStream(file, true);
+				}
+				start = out.getChannel().size();
+				out.write(batch.toString().getBytes());
+				out.getFD().sync();
+				written = out.getChannel().size();
+			} catch (IOException ex) {
+				log.error("Failed appending entries to file {}", file, ex);
+				if (start >= 0) {
+					// The lines may be in the file even though the logins adding them fail.
+					truncate(start);
+				}
+				closeJournal();
+				for (Line queuedLine : lines) {
+					queuedLine.failure = ex;
+				}
+				throw ex;
+			} finally {
+				/*
+				 * Deliberately also on failure: the batch has left the queue, and
+				 * the threads waiting for its lines must throw their failure, not
+				 * write them again.
+				 */
+				committed = last;
+			}
+			if (fresh) {
+				// Only our own lines were added, which the map already has.
+				synchronized (this) {
+					if (snapshot == current) {
+						snapshot = new Snapshot(current.usernames, settled(file.lastModified()), file.length());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cuts off a batch that was not completely written and synced. If that
+	 * fails too, the file may keep some of its lines, and a check of the file
+	 * reads them since its size has changed.
+	 */
+	private void truncate(long length) {
+		try {
+			out.getChannel().truncate(length);
+			out.getFD().sync();
+		} catch (IOException ex) {
+			log.error("Failed removing unwritten entries from file {}", file, ex);
+		}
+	}
+
+	private void closeJournal() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException ex) {
+				log.debug("Failed closing file {}", file, ex);
+			}
+			out = null;
+			written = -1;
+		}
+	}
+
+	/**
+	 * Check the file for changes in the background every
+	 * <code>intervalMillis</code> instead of on every lookup.
+	 *
+	 * @param intervalMillis milliseconds between checks, 0 to check on every lookup
+	 */
+	synchronized void setReloadInterval(long intervalMillis) {
+		if (intervalMillis < 0) {
+			throw new IllegalArgumentException("negative reload interval is not valid.");
+		}
+		if (intervalMillis == reloadIntervalMillis) {
+			return;
+		}
+		if (reloadTask != null) {
+			reloadTask.cancel(false);
+			reloadTask = null;
+		}
+		reloadIntervalMillis = intervalMillis;
+		if (intervalMillis > 0) {
+			reloadTask = getReloader().scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					reloadIfChanged();
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private Snapshot current() throws FileNotFoundException {
+		Snapshot current = snapshot;
+		if (current != null && (reloadTask != null || !current.isStale(file))) {
+			return current;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (current == null || (reloadTask == null && current.isStale(file))) {
+				current = load();
+				snapshot = current;
+			}
+			return current;
+		}
+	}
+
+	private void reloadIfChanged() {
+		try {
+			Snapshot current = snapshot;
+			if (current != null && current.isStale(file)) {
+				synchronized (this) {
+					snapshot = load();
+				}
+				log.info("Reloaded {}", file);
+			}
+		} catch (RuntimeException ex) {
+			log.error("Failed reloading file {}", file, ex);
+		}
+	}
+
+	/**
+	 * Reads the file into a new snapshot, which records the file's modification
+	 * time and size from before it was read. Keys being provisioned are added
+	 * to it, since their lines may not be in the file yet.
+	 */
+	private Snapshot load() {
+		long modified = file.lastModified();
+		long length = file.length();
+		ConcurrentHashMap<String, String> usernames = new ConcurrentHashMap<String, String>();
+		BufferedReader reader;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		} catch (FileNotFoundException ex) {
+			return new Snapshot(null, modified, length);
+		}
+		boolean complete = false;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.startsWith("yk.")) {
+					continue;
+				}
+				int end = line.indexOf(".user", 3);
+				String[] parts = line.split("=");
+				if (end == -1 || parts.length < 2) {
+					continue;
+				}
+				usernames.putIfAbsent(line.substring(3, end), parts[1].trim());
+			}
+			complete = true;
+		} catch (IOException ex) {
+			log.error("Failed reading file {}", file, ex);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException ex) {
+				log.debug("Failed closing file {}", file, ex);
+			}
+		}
+		for (Map.Entry<String, String> entry : provisioning.entrySet()) {
+			usernames.putIfAbsent(entry.getKey(), entry.getValue());
+		}
+		log.debug("Loaded {} YubiKeys from {}", usernames.size(), file);
+		// What could be read is used, but only until the next check.
+		return new Snapshot(usernames, complete ? settled(modified) : -1, length);
+	}
+
+	/**
+	 * @return <code>modified</code>, or -1 to check the file again if it may
+	 * still change without changing its modification time
+	 */
+	private static long settled(long modified) {
+		return Math.abs(System.currentTimeMillis() - modified) < MODIFIED_RESOLUTION_MILLIS ? -1 : modified;
+	}
+
+	private static synchronized ScheduledExecutorService getReloader() {
+		if (reloader == null) {
+			reloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "yubico-id2name-reloader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return reloader;
+	}
+
+	private static class Line {
+		private final String text;
+		/* Guarded by writeLock. */
+		private IOException failure;
+
+		Line(String text) {
+			this.text = text;
+		}
+	}
+
+	private static class Snapshot {
+		/* Null if the file does not exist. */
+		private final ConcurrentHashMap<String, String> usernames;
+		private final long modified;
+		private final long length;
+
+		Snapshot(ConcurrentHashMap<String, String> usernames, long modified, long length) {
+			this.usernames = usernames;
+			this.modified = modified;
+			this.length = length;
+		}
+
+		String get(String publicId) throws FileNotFoundException {
+			if (usernames == null) {
+				throw new FileNotFoundException("No such file.");
+			}
+			return usernames.get(publicId);
+		}
+
+		boolean isStale(File file) {
+			return modified != file.lastModified() || length != file.length();
+		}
+	}
+}
@@ -39,6 +39,9 @@ import edu.vt.middleware.ldap.LdapConfig;
 import edu.vt.middleware.ldap.SearchFilter;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import javax.naming.NamingException;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchResult;
@@ -51,6 +54,10 @@ import org.slf4j.LoggerFactory;
  * This implementation uses a LDAP directory to look up the Yubikey's
  * publicId and fetch the associated username.
  *
+ * With the ldap_cache_size option, owners are kept in a
+ * {@link YubikeyToUserCache} shared by all logins using the same directory
+ * settings, instead of being searched for on every login.
+ *
  * @author Etienne Dysli (etienne.dysli@unil.ch)
  */
 public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
@@ -69,6 +76,13 @@ public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
     public static final String OPTION_LDAP_BIND_DN = "ldap_bind_dn";
     /** Password for the bind DN (default: empty) */
     public static final String OPTION_LDAP_BIND_CREDENTIAL = "ldap_bind_credential";
+    /** Number of YubiKey owners to cache, rounded up to a multiple of 16, 0 to search for every login (default: 0) */
+    public static final String OPTION_LDAP_CACHE_SIZE = "ldap_cache_size";
+    /** Seconds to cache the owner of a YubiKey (default: 300) */
+    public static final String OPTION_LDAP_CACHE_TTL = "ldap_cache_ttl";
+    /** Seconds to cache that a YubiKey has no owner (default: 30) */
+    public static final String OPTION_LDAP_CACHE_NEGATIVE_TTL = "ldap_cache_negative_ttl";
+    private static final ConcurrentMap<String, YubikeyToUserCache> caches = new ConcurrentHashMap<String, YubikeyToUserCache>();
     private boolean verify_yubikey_owner = true;
     private String publicid_attribute = "";
     private String username_attribute = "uid";
@@ -77,6 +91,7 @@ public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
     private String ldap_bind_dn = "";
     private String ldap_bind_credential = "";
     private Ldap ldap;
+    private YubikeyToUserCache cache;
     private final Logger log = LoggerFactory.getLogger(YubikeyToUserLDAPMap.class);
 
     /** {@inheritDoc} */
@@ -86,17 +101,16 @@ public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
             log.debug("YubiKey owner verification disabled, returning 'true'");
             return true;
         }
-        String ykuser = null;
+        String ykuser;
         try {
-            SearchFilter filter = new SearchFilter("({0}={1})", new String[]{this.publicid_attribute, publicId});
-            log.debug("Searching for YubiKey publicId with filter: {}", filter.toString());
-            Iterator<SearchResult> results = ldap.search(filter, new String[]{this.username_attribute});
-            if (results.hasNext()) {
-                Attributes results_attributes = results.next().getAttributes();
-                log.debug("Found attributes: {}", results_attributes.toString());
-                ykuser = results_attributes.get(this.username_attribute).get().toString();
+            if (this.cache != null) {
+                ykuser = this.cache.get(publicId, new YubikeyToUserCache.Lookup() {
+                    public String lookup(String publicId) throws NamingException {
+                        return search_username_for_id(ldap, publicId);
+                    }
+                });
             } else {
-                log.debug("No search results");
+                ykuser = search_username_for_id(this.ldap, publicId);
             }
         } catch (NamingException ex) {
             log.error(ex.getMessage(), ex);
@@ -116,6 +130,34 @@ public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
         }
     }
 
+    /**
+     * Searches the directory for the owner of a YubiKey.
+     *
+     * @param ldap the directory connection to search with
+     * @param publicId YubiKey public ID to search for
+     * @return String username, or null if no entry has the public ID
+     * @throws NamingException if the search fails
+     */
+    private String search_username_for_id(Ldap ldap, String publicId) throws NamingException {
+        SearchFilter filter = new SearchFilter("({0}={1})", new String[]{this.publicid_attribute, publicId});
+        log.debug("Searching for YubiKey publicId with filter: {}", filter.toString());
+        Iterator<SearchResult> results = ldap.search(filter, new String[]{this.username_attribute});
+        if (results.hasNext()) {
+            Attributes results_attributes = results.next().getAttributes();
+            log.debug("Found attributes: {}", results_attributes.toString());
+            return results_attributes.get(this.username_attribute).get().toString();
+        }
+        log.debug("No search results");
+        return null;
+    }
+
+    /**
+     * @return the cache of YubiKey owners used by this map, or null if owners are not cached
+     */
+    public YubikeyToUserCache getCache() {
+        return this.cache;
+    }
+
     /** {@inheritDoc} */
     public final void setOptions(Map<String, ?> options) {
         /* Is verification of YubiKey owners enabled? */
@@ -143,9 +185,56 @@ public class YubikeyToUserLDAPMap implements YubikeyToUserMap {
         if (options.get(OPTION_LDAP_BIND_CREDENTIAL) != null) {
             this.ldap_bind_credential = options.get(OPTION_LDAP_BIND_CREDENTIAL).toString();
         }
+        this.ldap = newLdap();
+
+        /* Cache YubiKey owners? */
+        this.cache = null;
+        if (options.get(OPTION_LDAP_CACHE_SIZE) != null) {
+            int cache_size = Integer.parseInt(options.get(OPTION_LDAP_CACHE_SIZE).toString());
+            long cache_ttl = 300;
+            long cache_negative_ttl = 30;
+            if (options.get(OPTION_LDAP_CACHE_TTL) != null) {
+                cache_ttl = Long.parseLong(options.get(OPTION_LDAP_CACHE_TTL).toString());
+            }
+            if (options.get(OPTION_LDAP_CACHE_NEGATIVE_TTL) != null) {
+                cache_negative_ttl = Long.parseLong(options.get(OPTION_LDAP_CACHE_NEGATIVE_TTL).toString());
+            }
+            if (cache_size > 0) {
+                this.cache = getSharedCache(cache_size, cache_ttl, cache_negative_ttl);
+            }
+        }
+    }
+
+    private Ldap newLdap() {
         LdapConfig config = new LdapConfig(this.ldap_url, this.ldap_base_dn);
         config.setBindDn(this.ldap_bind_dn);
         config.setBindCredential(this.ldap_bind_credential);
-        this.ldap = new Ldap(config);
+        return new Ldap(config);
+    }
+
+    /**
+     * JAAS creates a new map for every login, so the cache is shared by all
+     * maps searching the same directory in the same way. Owners are looked up
+     * again in the background with a connection of the cache's own, not the
+     * one of the login that happened to use the owner.
+     */
+    private YubikeyToUserCache getSharedCache(int size, long ttl, long negative_ttl) {
+        String key = this.ldap_url + "\n" + this.ldap_base_dn + "\n" + this.ldap_bind_dn + "\n"
+                + this.publicid_attribute + "\n" + this.username_attribute + "\n" + size + "\n" + ttl + "\n" + negative_ttl;
+        YubikeyToUserCache cache = caches.get(key);
+        if (cache == null) {
+            final Ldap refreshLdap = newLdap();
+            YubikeyToUserCache created = new YubikeyToUserCache(size, ttl, negative_ttl, TimeUnit.SECONDS,
+                    new YubikeyToUserCache.Lookup() {
+                        public String lookup(String publicId) throws NamingException {
+                            return search_username_for_id(refreshLdap, publicId);
+                        }
+                    });
+            cache = caches.putIfAbsent(key, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
     }
 }
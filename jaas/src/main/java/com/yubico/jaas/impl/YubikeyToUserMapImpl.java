@@ -29,12 +29,9 @@
  */
 package com.yubico.jaas.impl;
 
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Map;
-import java.util.Scanner;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +60,7 @@ public class YubikeyToUserMapImpl implements YubikeyToUserMap {
 	public static final String OPTION_YUBICO_AUTO_PROVISION		= "auto_provision_owner";
 	public static final String OPTION_YUBICO_ID2NAME_TEXTFILE	= "id2name_textfile";
 	public static final String OPTION_YUBICO_VERIFY_YK_OWNER	= "verify_yubikey_owner";
+	public static final String OPTION_YUBICO_ID2NAME_RELOAD_INTERVAL	= "id2name_reload_interval";
 	private String id2name_textfile;
 	private boolean auto_provision_owners = false;
 	private boolean verify_yubikey_owner = true;
@@ -81,6 +79,13 @@ public class YubikeyToUserMapImpl implements YubikeyToUserMap {
 		/* id2name text file */
 		if (options.get(OPTION_YUBICO_ID2NAME_TEXTFILE) != null) {
 			this.id2name_textfile = options.get(OPTION_YUBICO_ID2NAME_TEXTFILE).toString();
+
+			/* check the file for changes in the background instead of on every login? */
+			long reload_interval = 0;
+			if (options.get(OPTION_YUBICO_ID2NAME_RELOAD_INTERVAL) != null) {
+				reload_interval = Long.parseLong(options.get(OPTION_YUBICO_ID2NAME_RELOAD_INTERVAL).toString());
+			}
+			YubikeyToUserIndex.forFile(this.id2name_textfile).setReloadInterval(reload_interval * 1000);
 		}
 
 		/* should we automatically assign new yubikeys to users? */
@@ -120,7 +125,17 @@ public class YubikeyToUserMapImpl implements YubikeyToUserMap {
 			if (this.auto_provision_owners) {
 				log.info("Registering new YubiKey " + publicId + " as belonging to {}", username);
 
-				add_yubikey_to_user(publicId, username, this.id2name_textfile);
+				String owner;
+				try {
+					owner = add_yubikey_to_user(publicId, username, this.id2name_textfile);
+				} catch (IOException ex) {
+					log.error("Failed registering YubiKey " + publicId + " in {}, denying login", this.id2name_textfile);
+					return false;
+				}
+				if (! owner.equals(username)) {
+					log.info("YubiKey " + publicId + " registered to user {}, NOT {}", owner, username);
+					return false;
+				}
 				return true;
 			}
 			log.debug("No record of YubiKey {} found. Returning 'false'.", publicId);
@@ -129,8 +144,10 @@ public class YubikeyToUserMapImpl implements YubikeyToUserMap {
 	}
 
 	/**
-	 * Given publicId "vvcccccfhc", scans filename for a line like "yk.vvcccccfhc.user = alice"
+	 * Given publicId "vvcccccfhc", looks up a line like "yk.vvcccccfhc.user = alice" in filename
 	 * and returns "alice" if found. Null is returned in case there is no matching line in file.
+	 * The file is read into a {@link YubikeyToUserIndex}, and read again only when it changes,
+	 * either checked on every lookup or, with id2name_reload_interval, in the background.
 	 *
 	 * @param publicId YubiKey public ID to scan for
 	 * @param filename name of the file to scan
@@ -138,42 +155,21 @@ public class YubikeyToUserMapImpl implements YubikeyToUserMap {
 	 * @throws FileNotFoundException if the filename does not match an existing file
 	 */
 	private String get_username_for_id(String publicId, String filename) throws FileNotFoundException {
-		Scanner sc = null;
-		File file = new File(filename);
-		try {
-			sc = new Scanner(file);
-			while (sc.hasNextLine()) {
-				String line = sc.nextLine();
-				if (line.startsWith("yk." + publicId + ".user")) {
-					String ykuser = line.split("=")[1].trim();
-
-					return ykuser;
-				}
-			}
-		} finally {
-			if (sc != null) {
-				sc.close();
-			}
-		}
-		return null;
+		return YubikeyToUserIndex.forFile(filename).get(publicId);
 	}
 
 	/**
-	 * Stores an association between username and YubiKey publicId in filename.
+	 * Stores an association between username and YubiKey publicId in filename,
+	 * unless another user was associated with the YubiKey first. Concurrent
+	 * logins are appended to the file together by the {@link YubikeyToUserIndex}.
 	 *
      * @param publicId YubiKey public ID to associate with user
 	 * @param username username to associate with a YubiKey public ID
      * @param filename name of the file to store to
+	 * @return String username of the YubiKey's owner
+	 * @throws IOException if the association could not be stored, in which case it is not made
 	 */
-	private void add_yubikey_to_user(String publicId, String username, String filename) {
-		try {
-			File file = new File(filename);
-			FileWriter writer = new FileWriter(file, true);
-			writer.write("yk." + publicId + ".user = " + username
-					+ System.getProperty("line.separator"));
-			writer.close();
-		} catch (IOException ex) {
-			log.error("Failed appending entry to file {}", filename, ex);
-		}
+	private String add_yubikey_to_user(String publicId, String username, String filename) throws IOException {
+		return YubikeyToUserIndex.forFile(filename).provision(publicId, username);
 	}
 }
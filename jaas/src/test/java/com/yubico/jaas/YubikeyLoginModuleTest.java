@@ -0,0 +1,102 @@
+package com.yubico.jaas;
+
+import com.yubico.client.v2.VerificationResponse;
+import com.yubico.client.v2.YubicoClient;
+import com.yubico.client.v2.exceptions.YubicoValidationFailure;
+import com.yubico.client.v2.exceptions.YubicoVerificationException;
+import com.yubico.client.v2.impl.VerificationResponseImpl;
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.login.LoginException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class YubikeyLoginModuleTest {
+
+    private static final String GOOD_OTP = "ccccccgetbkhbkjidfvngrtkkiuevbbglktujdukcnvl";
+    private static final String REPLAYED_OTP = "ccccccgetbkhtdelccclkdtugcljfjbjikbvhlbkhllb";
+
+    /* Accepts GOOD_OTP and fails every other OTP as a replayed response would. */
+    private static class StubClient extends YubicoClient {
+        final Set<String> verified = new HashSet<String>();
+
+        @Override
+        public VerificationResponse verify(String otp) throws YubicoVerificationException, YubicoValidationFailure {
+            synchronized (verified) {
+                verified.add(otp);
+            }
+            if (!GOOD_OTP.equals(otp)) {
+                throw new YubicoValidationFailure("Nonce mismatch in response, is there a man-in-the-middle?");
+            }
+            try {
+                return new VerificationResponseImpl(new ByteArrayInputStream(
+                        ("otp=" + otp + "\r\nstatus=OK\r\n").getBytes("UTF-8")));
+            } catch (Exception e) {
+                throw new YubicoVerificationException("Bad stub response", e);
+            }
+        }
+    }
+
+    private static class LocalYubikeyLoginModule extends YubikeyLoginModule {
+        final StubClient client = new StubClient();
+
+        @Override
+        YubicoClient createClient(Integer clientId, String clientKey) {
+            return client;
+        }
+    }
+
+    @Test
+    public void testGoodOtpLogsIn() throws LoginException {
+        Subject subject = new Subject();
+        LocalYubikeyLoginModule module = newModule(subject, GOOD_OTP);
+        assertTrue(module.login());
+        module.commit();
+        assertEquals(1, subject.getPrincipals(YubikeyPrincipal.class).size());
+    }
+
+    @Test
+    public void testGoodAndReplayedOtpFailsLogin() {
+        LocalYubikeyLoginModule module = newModule(new Subject(), GOOD_OTP, REPLAYED_OTP);
+        try {
+            module.login();
+            fail("Login with a replayed OTP succeeded");
+        } catch (LoginException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Nonce mismatch"));
+        }
+        assertEquals(2, module.client.verified.size());
+    }
+
+    private static LocalYubikeyLoginModule newModule(Subject subject, final String... otps) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put(YubikeyLoginModule.OPTION_YUBICO_CLIENT_ID, "1");
+        options.put(YubikeyLoginModule.OPTION_YUBICO_CLIENT_KEY, "");
+        options.put("verify_yubikey_owner", "false");
+        LocalYubikeyLoginModule module = new LocalYubikeyLoginModule();
+        module.initialize(subject, new CallbackHandler() {
+            public void handle(Callback[] callbacks) {
+                for (Callback callback : callbacks) {
+                    if (callback instanceof NameCallback) {
+                        ((NameCallback) callback).setName("alice");
+                    } else if (callback instanceof PasswordCallback) {
+                        for (String otp : otps) {
+                            ((PasswordCallback) callback).setPassword(otp.toCharArray());
+                        }
+                    }
+                }
+            }
+        }, new HashMap<String, Object>(), options);
+        return module;
+    }
+}
@@ -0,0 +1,161 @@
+package com.yubico.jaas.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.NamingException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class YubikeyToUserCacheTest {
+
+    @Test
+    public void testOwnersAreCached() throws NamingException {
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 1, 1, TimeUnit.HOURS);
+        CountingLookup lookup = new CountingLookup();
+        lookup.owners.put("vvcccfhcb", "alice");
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        assertNull(cache.get("cccccccfhc", lookup));
+        assertNull(cache.get("cccccccfhc", lookup));
+        assertEquals(2, lookup.count.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getNegativeHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testNegativeEntriesExpireSeparately() throws Exception {
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 3600000, 50, TimeUnit.MILLISECONDS);
+        CountingLookup lookup = new CountingLookup();
+        lookup.owners.put("vvcccfhcb", "alice");
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        assertNull(cache.get("cccccccfhc", lookup));
+        lookup.owners.put("cccccccfhc", "bob");
+        Thread.sleep(100);
+        assertEquals("bob", cache.get("cccccccfhc", lookup));
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        assertEquals(3, lookup.count.get());
+    }
+
+    @Test
+    public void testNoNegativeCaching() throws NamingException {
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 1, 0, TimeUnit.HOURS);
+        CountingLookup lookup = new CountingLookup();
+        assertNull(cache.get("cccccccfhc", lookup));
+        assertNull(cache.get("cccccccfhc", lookup));
+        assertEquals(2, lookup.count.get());
+    }
+
+    @Test
+    public void testHotEntryIsRefreshedAhead() throws Exception {
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 2000, 2000, TimeUnit.MILLISECONDS);
+        CountingLookup lookup = new CountingLookup();
+        lookup.owners.put("vvcccfhcb", "alice");
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        lookup.owners.put("vvcccfhcb", "caroline");
+        Thread.sleep(1600);
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lookup.count.get() < 2) {
+            assertTrue("not refreshed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals("caroline", cache.get("vvcccfhcb", lookup));
+        assertEquals(2, lookup.count.get());
+        assertEquals(1, cache.getRefreshes());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testFailedRefreshIsRetriedWithOwnLookup() throws Exception {
+        final CountingLookup refreshLookup = new CountingLookup();
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 2000, 2000, TimeUnit.MILLISECONDS,
+                new YubikeyToUserCache.Lookup() {
+                    public String lookup(String publicId) throws NamingException {
+                        if (refreshLookup.count.get() == 0) {
+                            refreshLookup.count.incrementAndGet();
+                            throw new IllegalStateException("connection broken");
+                        }
+                        return refreshLookup.lookup(publicId);
+                    }
+                });
+        CountingLookup lookup = new CountingLookup();
+        lookup.owners.put("vvcccfhcb", "alice");
+        refreshLookup.owners.put("vvcccfhcb", "caroline");
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        Thread.sleep(1600);
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.getFailures() < 1) {
+            assertTrue("not refreshed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        while (refreshLookup.count.get() < 2) {
+            assertTrue("not refreshed again", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals("caroline", cache.get("vvcccfhcb", lookup));
+        assertEquals(1, lookup.count.get());
+        assertEquals(2, cache.getRefreshes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreDropped() throws NamingException {
+        YubikeyToUserCache cache = new YubikeyToUserCache(16, 1, 1, TimeUnit.HOURS);
+        CountingLookup lookup = new CountingLookup();
+        for (int i = 0; i < 1000; i++) {
+            cache.get("cccccc" + i, lookup);
+        }
+        assertTrue(cache.size() <= 16);
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws NamingException {
+        YubikeyToUserCache cache = new YubikeyToUserCache(100, 1, 1, TimeUnit.HOURS);
+        CountingLookup lookup = new CountingLookup();
+        lookup.fail = true;
+        try {
+            cache.get("vvcccfhcb", lookup);
+            fail("expected NamingException");
+        } catch (NamingException expected) {
+        }
+        lookup.fail = false;
+        lookup.owners.put("vvcccfhcb", "alice");
+        assertEquals("alice", cache.get("vvcccfhcb", lookup));
+        assertEquals(1, cache.getFailures());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSize() {
+        new YubikeyToUserCache(0, 1, 1, TimeUnit.HOURS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroTtl() {
+        new YubikeyToUserCache(100, 0, 1, TimeUnit.HOURS);
+    }
+
+    private static class CountingLookup implements YubikeyToUserCache.Lookup {
+        final Map<String, String> owners = new HashMap<String, String>();
+        final AtomicInteger count = new AtomicInteger();
+        volatile boolean fail;
+
+        public synchronized String lookup(String publicId) throws NamingException {
+            count.incrementAndGet();
+            if (fail) {
+                throw new NamingException("directory unavailable");
+            }
+            return owners.get(publicId);
+        }
+    }
+}
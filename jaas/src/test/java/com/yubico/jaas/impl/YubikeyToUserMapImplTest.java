@@ -0,0 +1,173 @@
+package com.yubico.jaas.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class YubikeyToUserMapImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws IOException {
+        File file = write(folder.newFile(), "# comment\nyk.vvcccfhcb.user = alice\nyk.cccccccfhc.user = bob\n"
+                + "yk.vvcccfhcb.user = mallory\nbroken line\n");
+        YubikeyToUserMapImpl map = newMap(file, false);
+        assertTrue(map.is_right_user("alice", "vvcccfhcb"));
+        assertFalse(map.is_right_user("mallory", "vvcccfhcb"));
+        assertTrue(map.is_right_user("bob", "cccccccfhc"));
+        assertFalse(map.is_right_user("alice", "cccccccfhc"));
+        assertFalse(map.is_right_user("alice", "vvccc"));
+    }
+
+    @Test
+    public void testChangedFileIsReadAgain() throws IOException {
+        File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        assertTrue(newMap(file, false).is_right_user("alice", "vvcccfhcb"));
+        write(file, "yk.vvcccfhcb.user = caroline\n");
+        assertFalse(newMap(file, false).is_right_user("alice", "vvcccfhcb"));
+        assertTrue(newMap(file, false).is_right_user("caroline", "vvcccfhcb"));
+    }
+
+    @Test
+    public void testSameSizeEditWithSameModificationTimeIsReadAgain() throws IOException {
+        File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        long modified = file.lastModified();
+        assertTrue(newMap(file, false).is_right_user("alice", "vvcccfhcb"));
+        write(file, "yk.vvcccfhcb.user = carol\n");
+        assertTrue(file.setLastModified(modified));
+        assertTrue(newMap(file, false).is_right_user("carol", "vvcccfhcb"));
+    }
+
+    @Test
+    public void testAutoProvisionedKeyIsFound() throws IOException {
+        File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        assertTrue(newMap(file, true).is_right_user("bob", "cccccccfhc"));
+        assertFalse(newMap(file, true).is_right_user("alice", "cccccccfhc"));
+        assertTrue(newMap(file, false).is_right_user("bob", "cccccccfhc"));
+    }
+
+    @Test
+    public void testChangedFileIsReloadedInBackground() throws Exception {
+        File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        assertTrue(newMap(file, false, 1).is_right_user("alice", "vvcccfhcb"));
+        write(file, "yk.vvcccfhcb.user = caroline\n");
+        assertTrue(newMap(file, false, 1).is_right_user("alice", "vvcccfhcb"));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (newMap(file, false, 1).is_right_user("alice", "vvcccfhcb")) {
+            assertTrue("file not reloaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+        assertTrue(newMap(file, false, 1).is_right_user("caroline", "vvcccfhcb"));
+    }
+
+    @Test
+    public void testAutoProvisionedKeyIsFoundBeforeReload() throws IOException {
+        File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        assertTrue(newMap(file, true, 3600).is_right_user("bob", "cccccccfhc"));
+        assertFalse(newMap(file, true, 3600).is_right_user("alice", "cccccccfhc"));
+        assertTrue(newMap(file, false, 3600).is_right_user("bob", "cccccccfhc"));
+    }
+
+    @Test
+    public void testConcurrentAutoProvisioning() throws Exception {
+        final File file = write(folder.newFile(), "yk.vvcccfhcb.user = alice\n");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 100; i++) {
+                final String user = "user" + i;
+                final String publicId = "cccccc" + (i % 50);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return newMap(file, true).is_right_user(user, publicId);
+                    }
+                }));
+            }
+            int accepted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    accepted++;
+                }
+            }
+            assertEquals(50, accepted);
+        } finally {
+            executor.shutdown();
+        }
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(51, lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            String publicId = line.substring(3, line.indexOf(".user"));
+            String user = line.substring(line.indexOf('=') + 1).trim();
+            assertTrue(line, newMap(file, false).is_right_user(user, publicId));
+        }
+    }
+
+    @Test
+    public void testFailedAutoProvisioningDeniesLogin() {
+        // Readable, but writing to it fails even for root.
+        File file = new File("/proc/version");
+        Assume.assumeTrue(file.canRead());
+        assertFalse(newMap(file, true).is_right_user("bob", "cccccccfhc"));
+        assertFalse(newMap(file, false).is_right_user("bob", "cccccccfhc"));
+        assertFalse(newMap(file, true).is_right_user("alice", "cccccccfhc"));
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertFalse(newMap(new File(folder.getRoot(), "missing"), false).is_right_user("alice", "vvcccfhcb"));
+    }
+
+    private static YubikeyToUserMapImpl newMap(File file, boolean autoProvision) {
+        return newMap(file, autoProvision, 0);
+    }
+
+    private static YubikeyToUserMapImpl newMap(File file, boolean autoProvision, long reloadInterval) {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put(YubikeyToUserMapImpl.OPTION_YUBICO_ID2NAME_RELOAD_INTERVAL, Long.toString(reloadInterval));
+        options.put(YubikeyToUserMapImpl.OPTION_YUBICO_ID2NAME_TEXTFILE, file.getPath());
+        options.put(YubikeyToUserMapImpl.OPTION_YUBICO_AUTO_PROVISION, Boolean.toString(autoProvision));
+        YubikeyToUserMapImpl map = new YubikeyToUserMapImpl();
+        map.setOptions(options);
+        return map;
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
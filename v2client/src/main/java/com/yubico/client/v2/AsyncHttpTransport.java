@@ -0,0 +1,78 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * An {@link HttpTransport} that can also send requests without blocking the
+ * calling thread. {@link VerificationRequester} uses
+ * {@link #getAsync(URL, String, int, int, Callback)} for transports
+ * implementing this interface, so that no thread waits for the responses and
+ * retries are scheduled instead of slept.
+ */
+public interface AsyncHttpTransport extends HttpTransport {
+
+	/**
+	 * Start a GET request to <code>url</code>. Exactly one method of
+	 * <code>callback</code> is called when the request completes, unless it is
+	 * aborted first. Callbacks may run on a thread shared by many requests, and
+	 * must not block.
+	 *
+	 * @param url the complete request URL, including the query string
+	 * @param userAgent value of the User-Agent header
+	 * @param connectTimeout connect timeout in milliseconds, 0 for none
+	 * @param readTimeout read timeout in milliseconds, 0 for none
+	 * @param callback receives the response body or the error
+	 * @return a handle whose <code>close()</code> aborts the request; the callback is
+	 * not called after that
+	 */
+	Closeable getAsync(URL url, String userAgent, int connectTimeout, int readTimeout, Callback callback);
+
+	/**
+	 * Receives the outcome of a request sent with
+	 * {@link AsyncHttpTransport#getAsync(URL, String, int, int, Callback)}.
+	 */
+	interface Callback {
+
+		/**
+		 * @param body the response body
+		 */
+		void onResponse(InputStream body);
+
+		/**
+		 * @param e the network error, or the error for a non-successful HTTP response
+		 */
+		void onFailure(IOException e);
+	}
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.EndpointHealth.State;
+
+import static com.yubico.client.v2.EndpointHealth.State.CLOSED;
+import static com.yubico.client.v2.EndpointHealth.State.HALF_OPEN;
+import static com.yubico.client.v2.EndpointHealth.State.OPEN;
+
+/**
+ * What {@link VerificationRequester} knows about one validation server,
+ * identified by its URL without the query string.
+ *
+ * Each endpoint has a circuit breaker. It opens after a number of consecutive
+ * failed requests, and then no requests are sent to the server until the open
+ * period has passed. After that a single probe request is let through: the
+ * breaker closes if it succeeds and opens again if it fails. When the breakers
+ * of all servers of a validation are open, the one that failed least recently
+ * is tried anyway.
+ */
+class Endpoint {
+	private static final int LATENCY_SAMPLES = 100;
+	private static final double SCORE_WEIGHT = 0.1;
+
+	private final String url;
+	private final LatencyWindow latencies = new LatencyWindow(LATENCY_SAMPLES);
+
+	/* Guarded by this. */
+	private State state = CLOSED;
+	private long openedAt;
+	private long lastFailureAt;
+	private boolean probing = false;
+	private int consecutiveFailures = 0;
+	private long successes = 0;
+	private long failures = 0;
+	private double score = 1.0;
+
+	Endpoint(String url) {
+		this.url = url;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Records how long a request took, including its retries. Failed requests are
+	 * recorded too, since callers had to wait that long for nothing.
+	 */
+	void recordLatency(long nanos) {
+		latencies.record(nanos);
+	}
+
+	/**
+	 * @return the given latency percentile in nanoseconds, or -1 if nothing has been recorded
+	 */
+	long getLatencyPercentile(double percentile) {
+		return latencies.getPercentile(percentile);
+	}
+
+	/**
+	 * Decides whether a request may be sent to this server now.
+	 *
+	 * @param now current {@link System#nanoTime()}
+	 * @param openNanos how long the breaker stays open before letting a probe through
+	 */
+	synchronized boolean allowRequest(long now, long openNanos) {
+		switch (state) {
+			case OPEN:
+				if (now - openedAt < openNanos) {
+					return false;
+				}
+				state = HALF_OPEN;
+				probing = true;
+				return true;
+			case HALF_OPEN:
+				if (probing) {
+					return false;
+				}
+				probing = true;
+				return true;
+			default:
+				return true;
+		}
+	}
+
+	synchronized void recordSuccess() {
+		state = CLOSED;
+		probing = false;
+		consecutiveFailures = 0;
+		successes++;
+		score += SCORE_WEIGHT * (1.0 - score);
+	}
+
+	/**
+	 * @param now current {@link System#nanoTime()}
+	 * @param threshold number of consecutive failures that opens the breaker, 0 for never
+	 */
+	synchronized void recordFailure(long now, int threshold) {
+		consecutiveFailures++;
+		failures++;
+		lastFailureAt = now;
+		score -= SCORE_WEIGHT * score;
+		if (state == HALF_OPEN || (threshold > 0 && consecutiveFailures >= threshold)) {
+			state = OPEN;
+			openedAt = now;
+		}
+		probing = false;
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} of the last failed request
+	 */
+	synchronized long getLastFailure() {
+		return lastFailureAt;
+	}
+
+	/**
+	 * Records that a request was cancelled before its outcome was known, so that
+	 * a probe that never finished does not keep the breaker half open forever.
+	 */
+	synchronized void recordCancelled() {
+		probing = false;
+	}
+
+	EndpointHealth getHealth() {
+		State state;
+		int consecutiveFailures;
+		long successes;
+		long failures;
+		double score;
+		synchronized (this) {
+			state = this.state;
+			consecutiveFailures = this.consecutiveFailures;
+			successes = this.successes;
+			failures = this.failures;
+			score = this.score;
+		}
+		return new EndpointHealth(url, state, consecutiveFailures, successes, failures, score,
+				latencies.getPercentile(0.5), latencies.getPercentile(0.95));
+	}
+
+	static String keyOf(String url) {
+		int query = url.indexOf('?');
+		return query == -1 ? url : url.substring(0, query);
+	}
+}
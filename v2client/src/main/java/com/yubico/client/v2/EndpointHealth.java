@@ -0,0 +1,140 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of what a {@link VerificationRequester} knows about one validation
+ * server: the state of its circuit breaker, its recent success rate and its
+ * recent latency.
+ *
+ * @see VerificationRequester#getEndpointHealth()
+ */
+public final class EndpointHealth {
+
+	/**
+	 * State of the circuit breaker of a validation server.
+	 */
+	public enum State {
+		/* Requests are sent to the server. */ CLOSED,
+		/* The server has failed repeatedly; requests are not sent to it. */ OPEN,
+		/* The server is given one request to find out whether it has recovered. */ HALF_OPEN
+	}
+
+	private final String url;
+	private final State state;
+	private final int consecutiveFailures;
+	private final long successes;
+	private final long failures;
+	private final double score;
+	private final long medianLatencyNanos;
+	private final long p95LatencyNanos;
+
+	EndpointHealth(String url, State state, int consecutiveFailures, long successes, long failures, double score,
+			long medianLatencyNanos, long p95LatencyNanos) {
+		this.url = url;
+		this.state = state;
+		this.consecutiveFailures = consecutiveFailures;
+		this.successes = successes;
+		this.failures = failures;
+		this.score = score;
+		this.medianLatencyNanos = medianLatencyNanos;
+		this.p95LatencyNanos = p95LatencyNanos;
+	}
+
+	/**
+	 * @return the validation URL, without query string
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the number of requests that have failed since the last one that succeeded
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return the number of requests that got a response from the server
+	 */
+	public long getSuccesses() {
+		return successes;
+	}
+
+	/**
+	 * @return the number of requests that failed, after retries
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return an exponentially weighted success rate of recent requests, from 0
+	 * (all failing) to 1 (all succeeding). Servers not contacted yet score 1.
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * @return the median latency of recent requests, or -1 if there are none
+	 */
+	public long getMedianLatency(TimeUnit unit) {
+		return medianLatencyNanos < 0 ? -1 : unit.convert(medianLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the 95th percentile latency of recent requests, or -1 if there are none
+	 */
+	public long get95thPercentileLatency(TimeUnit unit) {
+		return p95LatencyNanos < 0 ? -1 : unit.convert(p95LatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "EndpointHealth{" +
+				"url='" + url + '\'' +
+				", state=" + state +
+				", consecutiveFailures=" + consecutiveFailures +
+				", successes=" + successes +
+				", failures=" + failures +
+				", score=" + score +
+				", medianLatencyNanos=" + medianLatencyNanos +
+				", p95LatencyNanos=" + p95LatencyNanos +
+				'}';
+	}
+}
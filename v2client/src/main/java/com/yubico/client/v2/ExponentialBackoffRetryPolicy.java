@@ -0,0 +1,82 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link RetryPolicy} with exponential backoff and full jitter: before retry
+ * <i>n</i> it waits a random time between zero and
+ * <code>min(maxDelay, baseDelay * 2^(n-1))</code>. The randomness spreads out
+ * the retries of many clients, so that they do not all hit a recovering server
+ * at once. It gives up when the retry would start after the deadline.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+	/**
+	 * Base delay 100 ms, max delay 2 s, deadline 10 s.
+	 */
+	public static final ExponentialBackoffRetryPolicy DEFAULT =
+			new ExponentialBackoffRetryPolicy(100, 2000, 10000, TimeUnit.MILLISECONDS);
+
+	private final long baseDelayNanos;
+	private final long maxDelayNanos;
+	private final long deadlineNanos;
+
+	/**
+	 * @param baseDelay upper bound of the delay before the first retry
+	 * @param maxDelay upper bound of the delay before any retry
+	 * @param deadline no retry is started later than this after the first attempt
+	 * @param unit unit of the other arguments
+	 */
+	public ExponentialBackoffRetryPolicy(long baseDelay, long maxDelay, long deadline, TimeUnit unit) {
+		if (baseDelay <= 0 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("Delays must satisfy 0 < baseDelay <= maxDelay.");
+		}
+		if (deadline < 0) {
+			throw new IllegalArgumentException("negative deadline is not valid.");
+		}
+		this.baseDelayNanos = unit.toNanos(baseDelay);
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.deadlineNanos = unit.toNanos(deadline);
+	}
+
+	public long getRetryDelayNanos(int retry, long elapsedNanos) {
+		int shift = Math.min(Math.max(retry - 1, 0), 62);
+		// Compared this way round so that the shift cannot overflow.
+		long bound = baseDelayNanos > (maxDelayNanos >> shift) ? maxDelayNanos : baseDelayNanos << shift;
+		long delay = ThreadLocalRandom.current().nextLong(bound + 1);
+		if (elapsedNanos + delay > deadlineNanos) {
+			return -1;
+		}
+		return delay;
+	}
+}
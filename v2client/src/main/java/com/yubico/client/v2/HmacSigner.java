@@ -0,0 +1,158 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.exceptions.YubicoSignatureException;
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Calculates and checks HMAC-SHA1 signatures with one key, as
+ * {@link Signature#calculate(String, byte[])} does, without looking up the
+ * algorithm and setting up the key for every signature. Each thread keeps a
+ * {@link Mac} for each of the last few keys it used, initialized with the key on
+ * first use and reused after that. They are shared by all signers with the same
+ * key, so creating a signer is cheap, and a new signer for every login still
+ * signs with an initialized <code>Mac</code>.
+ *
+ * Instances are safe for use by multiple threads at once.
+ */
+public class HmacSigner {
+
+	private static final String HMAC_SHA1 = "HmacSHA1";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* Most keys whose Macs each thread keeps. */
+	private static final int MACS_PER_THREAD = 8;
+
+	/* Initialized Macs of each thread, by key, least recently used first. */
+	private static final ThreadLocal<Map<ByteBuffer, Mac>> macs = new ThreadLocal<Map<ByteBuffer, Mac>>() {
+		@Override
+		protected Map<ByteBuffer, Mac> initialValue() {
+			return new LinkedHashMap<ByteBuffer, Mac>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Mac> eldest) {
+					return size() > MACS_PER_THREAD;
+				}
+			};
+		}
+	};
+
+	private final SecretKeySpec signingKey;
+	/* A copy of the key, compared by content. */
+	private final ByteBuffer keyBytes;
+
+	/**
+	 * @param key the HMAC key; it is copied
+	 */
+	public HmacSigner(byte[] key) {
+		this.signingKey = new SecretKeySpec(key, HMAC_SHA1);
+		this.keyBytes = ByteBuffer.wrap(key.clone()).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Calculate the signature of <code>data</code>, from its position to its limit.
+	 * The position is moved to the limit.
+	 *
+	 * @param data the data to sign
+	 * @return the raw signature, 20 bytes
+	 */
+	public byte[] mac(ByteBuffer data) throws YubicoSignatureException {
+		Mac mac = getMac();
+		mac.update(data);
+		return mac.doFinal();
+	}
+
+	/**
+	 * @param data the data to sign, encoded as UTF-8
+	 * @return the Base64 encoded signature, the same as {@link Signature#calculate(String, byte[])} returns
+	 */
+	public String sign(String data) throws YubicoSignatureException {
+		byte[] raw = getMac().doFinal(data.getBytes(UTF8));
+		// Base64 encode the result, use old API call to work on android
+		return new String(Base64.encodeBase64(raw));
+	}
+
+	/**
+	 * Check a Base64 encoded signature, in time independent of how much of it matches.
+	 *
+	 * @param data the signed data, encoded as UTF-8
+	 * @param signature the Base64 encoded signature to check, may be null
+	 * @return true if <code>signature</code> is the signature of <code>data</code>
+	 */
+	public boolean verify(String data, String signature) throws YubicoSignatureException {
+		return verify(ByteBuffer.wrap(data.getBytes(UTF8)), signature);
+	}
+
+	/**
+	 * Check a Base64 encoded signature of <code>data</code>, from its position to its
+	 * limit, in time independent of how much of it matches. The position is moved
+	 * to the limit.
+	 *
+	 * @param data the signed data
+	 * @param signature the Base64 encoded signature to check, may be null
+	 * @return true if <code>signature</code> is the signature of <code>data</code>
+	 */
+	public boolean verify(ByteBuffer data, String signature) throws YubicoSignatureException {
+		if (signature == null) {
+			return false;
+		}
+		byte[] expected = Base64.encodeBase64(mac(data));
+		return MessageDigest.isEqual(expected, signature.trim().getBytes(UTF8));
+	}
+
+	private Mac getMac() throws YubicoSignatureException {
+		Map<ByteBuffer, Mac> threadMacs = macs.get();
+		Mac mac = threadMacs.get(keyBytes);
+		if (mac == null) {
+			try {
+				mac = Mac.getInstance(HMAC_SHA1);
+				mac.init(signingKey);
+			} catch (NoSuchAlgorithmException e) {
+				throw new YubicoSignatureException("No such algorithm (HMAC_SHA1?)", e);
+			} catch (InvalidKeyException e) {
+				throw new YubicoSignatureException("Invalid key in signature.", e);
+			}
+			threadMacs.put(keyBytes, mac);
+		}
+		return mac;
+	}
+}
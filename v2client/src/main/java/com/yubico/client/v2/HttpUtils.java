@@ -1,20 +1,84 @@
 package com.yubico.client.v2;
 
 import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 public class HttpUtils {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
     public static String toQueryString(Map<String, String> requestMap) throws UnsupportedEncodingException {
-        String paramStr = "";
+        StringBuilder paramStr = new StringBuilder();
         for(Map.Entry<String,String> entry : requestMap.entrySet()) {
-            if(!paramStr.isEmpty()) {
-                paramStr += "&";
+            appendParameter(paramStr, entry.getKey(), entry.getValue());
+        }
+        return paramStr.toString();
+    }
+
+    /**
+     * Append <code>key=value</code> to a query string, with the value encoded as by
+     * {@link java.net.URLEncoder#encode(String, String)} with UTF-8, preceded by
+     * <code>&amp;</code> unless the query string is empty. Parameters must be
+     * appended in the order they should appear.
+     *
+     * @param query the query string so far, without the leading <code>?</code>
+     * @param key parameter name, appended as is
+     * @param value parameter value
+     * @return <code>query</code>
+     */
+    public static StringBuilder appendParameter(StringBuilder query, String key, String value) {
+        if (query.length() > 0) {
+            query.append('&');
+        }
+        query.append(key).append('=');
+        return appendEncoded(query, value);
+    }
+
+    /**
+     * Append a string in <code>application/x-www-form-urlencoded</code> form,
+     * producing exactly what {@link java.net.URLEncoder#encode(String, String)}
+     * with UTF-8 does, without its intermediate objects.
+     *
+     * @param out where to append
+     * @param value the string to encode
+     * @return <code>out</code>
+     */
+    public static StringBuilder appendEncoded(StringBuilder out, String value) {
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                out.append(c);
+                i++;
+            } else if (c == ' ') {
+                out.append('+');
+                i++;
+            } else if (c < 0x80) {
+                appendPercent(out, c);
+                i++;
+            } else {
+                // Encoded together, so that surrogate pairs become one code point.
+                int end = i + 1;
+                while (end < length && value.charAt(end) >= 0x80) {
+                    end++;
+                }
+                for (byte b : value.substring(i, end).getBytes(UTF8)) {
+                    appendPercent(out, b & 0xff);
+                }
+                i = end;
             }
-            paramStr += entry.getKey() + "=" + URLEncoder.encode(entry.getValue(), "UTF-8");
         }
-        return paramStr;
+        return out;
     }
 
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c == '.' || c == '*';
+    }
 
+    private static void appendPercent(StringBuilder out, int b) {
+        out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+    }
 }
@@ -0,0 +1,574 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link HttpTransport} that keeps connections to the validation servers
+ * open between requests, so that consecutive requests to the same server do
+ * not each pay for a new TCP and TLS handshake.
+ *
+ * Idle connections are kept per host, up to a configurable number, and are
+ * closed once they have been idle for longer than the idle timeout. There is
+ * no limit on the number of connections in use at the same time; surplus
+ * connections are simply closed instead of being returned to the pool.
+ *
+ * Unlike {@link UrlConnectionTransport} this transport does not use the JRE's
+ * proxy settings and does not follow redirects.
+ */
+public class KeepAliveHttpTransport implements HttpTransport, Closeable {
+	private static final Logger log = LoggerFactory.getLogger(KeepAliveHttpTransport.class);
+
+	public static final int DEFAULT_MAX_IDLE_PER_HOST = 10;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10000L;
+
+	/* Validation responses are a few hundred bytes, anything this big is not one. */
+	private static final int MAX_RESPONSE_SIZE = 64 * 1024;
+	private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+	private final int maxIdlePerHost;
+	private final long idleTimeoutNanos;
+	private final SSLSocketFactory sslSocketFactory;
+
+	/* Idle connections per route, most recently used first. Guarded by itself. */
+	private final Map<String, Deque<Connection>> idle = new HashMap<String, Deque<Connection>>();
+	private boolean closed = false;
+
+	/**
+	 * Creates a transport keeping at most {@value #DEFAULT_MAX_IDLE_PER_HOST} idle
+	 * connections per host, each for at most {@value #DEFAULT_IDLE_TIMEOUT_MILLIS} ms.
+	 */
+	public KeepAliveHttpTransport() {
+		this(DEFAULT_MAX_IDLE_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param maxIdlePerHost maximum number of idle connections kept open per host
+	 * @param idleTimeout how long an idle connection is kept open
+	 * @param unit unit of <code>idleTimeout</code>
+	 */
+	public KeepAliveHttpTransport(int maxIdlePerHost, long idleTimeout, TimeUnit unit) {
+		this(maxIdlePerHost, idleTimeout, unit, (SSLSocketFactory) SSLSocketFactory.getDefault());
+	}
+
+	/**
+	 * @param maxIdlePerHost maximum number of idle connections kept open per host
+	 * @param idleTimeout how long an idle connection is kept open
+	 * @param unit unit of <code>idleTimeout</code>
+	 * @param sslSocketFactory factory used for https connections
+	 */
+	public KeepAliveHttpTransport(int maxIdlePerHost, long idleTimeout, TimeUnit unit,
+			SSLSocketFactory sslSocketFactory) {
+		if (maxIdlePerHost < 0) {
+			throw new IllegalArgumentException("negative maxIdlePerHost is not valid.");
+		}
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException("negative idleTimeout is not valid.");
+		}
+		this.maxIdlePerHost = maxIdlePerHost;
+		this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+		String protocol = url.getProtocol();
+		if (!"http".equals(protocol) && !"https".equals(protocol)) {
+			throw new IOException("Unsupported protocol: " + protocol);
+		}
+		if (userAgent != null && (userAgent.indexOf('\r') != -1 || userAgent.indexOf('\n') != -1)) {
+			throw new IllegalArgumentException("Illegal character in User-Agent.");
+		}
+
+		String route = routeOf(url);
+		Connection conn = takeIdle(route);
+		if (conn != null) {
+			try {
+				return exchange(conn, url, userAgent, readTimeout);
+			} catch (StaleConnectionException e) {
+				log.debug("Idle connection to {} was closed by the server, reconnecting.", url.getHost());
+			}
+		}
+		return exchange(connect(url, route, connectTimeout, readTimeout), url, userAgent, readTimeout);
+	}
+
+	/**
+	 * Close connections that have been idle for longer than the idle timeout.
+	 * This also happens as a side effect of every request, so calling this is
+	 * only needed to release sockets while the transport is not being used.
+	 */
+	public void closeIdleConnections() {
+		List<Connection> expired = new ArrayList<Connection>();
+		long now = System.nanoTime();
+		synchronized (idle) {
+			Iterator<Deque<Connection>> routes = idle.values().iterator();
+			while (routes.hasNext()) {
+				Deque<Connection> connections = routes.next();
+				pruneExpired(connections, now, expired);
+				if (connections.isEmpty()) {
+					routes.remove();
+				}
+			}
+		}
+		closeAll(expired);
+	}
+
+	/**
+	 * @return the number of idle connections currently kept open
+	 */
+	public int getIdleConnectionCount() {
+		int count = 0;
+		synchronized (idle) {
+			for (Deque<Connection> connections : idle.values()) {
+				count += connections.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Close all idle connections. Connections in use are closed when their
+	 * request completes.
+	 */
+	public void close() {
+		List<Connection> all = new ArrayList<Connection>();
+		synchronized (idle) {
+			closed = true;
+			for (Deque<Connection> connections : idle.values()) {
+				all.addAll(connections);
+			}
+			idle.clear();
+		}
+		closeAll(all);
+	}
+
+	private InputStream exchange(Connection conn, URL url, String userAgent, int readTimeout) throws IOException {
+		boolean keepAlive = false;
+		try {
+			conn.socket.setSoTimeout(readTimeout);
+
+			String statusLine;
+			try {
+				writeRequest(conn.out, url, userAgent);
+				statusLine = readLine(conn.in);
+			} catch (IOException e) {
+				if (conn.reused && !(e instanceof SocketTimeoutException)) {
+					throw new StaleConnectionException(e);
+				}
+				throw e;
+			}
+			if (statusLine == null) {
+				if (conn.reused) {
+					throw new StaleConnectionException(null);
+				}
+				throw new EOFException("Connection closed before response from " + url.getHost());
+			}
+
+			ResponseHead head = readHead(conn.in, statusLine, url.getHost());
+			byte[] body;
+			if (head.isCloseDelimited()) {
+				body = readToEnd(conn.in);
+			} else {
+				body = readBody(conn.in, head, url.getHost());
+				keepAlive = head.isKeepAlive();
+			}
+			checkStatus(head, url.getHost());
+			return new ByteArrayInputStream(body);
+		} finally {
+			if (keepAlive) {
+				release(conn);
+			} else {
+				closeQuietly(conn.socket);
+			}
+		}
+	}
+
+	private Connection connect(URL url, String route, int connectTimeout, int readTimeout) throws IOException {
+		String host = socketHost(url);
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			socket.setTcpNoDelay(true);
+			if ("https".equals(url.getProtocol())) {
+				SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+				SSLParameters params = sslSocket.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				sslSocket.setSSLParameters(params);
+				sslSocket.setSoTimeout(readTimeout);
+				sslSocket.startHandshake();
+				socket = sslSocket;
+			}
+			return new Connection(route, socket);
+		} catch (IOException e) {
+			closeQuietly(socket);
+			throw e;
+		}
+	}
+
+	private Connection takeIdle(String route) {
+		List<Connection> expired = new ArrayList<Connection>();
+		Connection conn = null;
+		synchronized (idle) {
+			Deque<Connection> connections = idle.get(route);
+			if (connections != null) {
+				pruneExpired(connections, System.nanoTime(), expired);
+				conn = connections.pollFirst();
+			}
+		}
+		closeAll(expired);
+		if (conn != null) {
+			conn.reused = true;
+		}
+		return conn;
+	}
+
+	private void release(Connection conn) {
+		List<Connection> expired = new ArrayList<Connection>();
+		long now = System.nanoTime();
+		boolean pooled = false;
+		synchronized (idle) {
+			if (!closed) {
+				Deque<Connection> connections = idle.get(conn.route);
+				if (connections == null) {
+					connections = new ArrayDeque<Connection>();
+					idle.put(conn.route, connections);
+				}
+				pruneExpired(connections, now, expired);
+				if (connections.size() < maxIdlePerHost) {
+					conn.idleSince = now;
+					connections.addFirst(conn);
+					pooled = true;
+				}
+			}
+		}
+		if (!pooled) {
+			expired.add(conn);
+		}
+		closeAll(expired);
+	}
+
+	/* Must be called holding the idle lock. The oldest connections are last. */
+	private void pruneExpired(Deque<Connection> connections, long now, List<Connection> expired) {
+		Connection oldest;
+		while ((oldest = connections.peekLast()) != null
+				&& (now - oldest.idleSince >= idleTimeoutNanos || oldest.socket.isClosed())) {
+			expired.add(connections.pollLast());
+		}
+	}
+
+	/**
+	 * Reads the response headers following <code>statusLine</code>.
+	 */
+	static ResponseHead readHead(InputStream in, String statusLine, String host) throws IOException {
+		ResponseHead head = new ResponseHead(parseStatus(statusLine), statusLine.startsWith("HTTP/1.1"));
+		String header;
+		while ((header = readLine(in)) != null && header.length() > 0) {
+			int colon = header.indexOf(':');
+			if (colon == -1) {
+				continue;
+			}
+			String name = header.substring(0, colon).trim();
+			String value = header.substring(colon + 1).trim();
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				try {
+					head.contentLength = Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid Content-Length from " + host);
+				}
+			} else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+				head.chunked = value.toLowerCase().contains("chunked");
+			} else if ("Connection".equalsIgnoreCase(name)) {
+				head.connection = value;
+			}
+		}
+		if (header == null) {
+			throw new EOFException("Connection closed in response headers from " + host);
+		}
+		return head;
+	}
+
+	/**
+	 * Reads a body delimited by its length or chunked encoding.
+	 */
+	static byte[] readBody(InputStream in, ResponseHead head, String host) throws IOException {
+		if (head.status == 204 || head.status == 304) {
+			return new byte[0];
+		} else if (head.chunked) {
+			return readChunked(in);
+		}
+		if (head.contentLength > MAX_RESPONSE_SIZE) {
+			throw new IOException("Response from " + host + " is too large.");
+		}
+		return readFully(in, (int) head.contentLength);
+	}
+
+	static void checkStatus(ResponseHead head, String host) throws IOException {
+		if (head.status < 200 || head.status >= 300) {
+			throw new IOException("Server returned HTTP response code: " + head.status + " from " + host);
+		}
+	}
+
+	private static void writeRequest(OutputStream out, URL url, String userAgent) throws IOException {
+		out.write(requestBytes(url, userAgent, true));
+		out.flush();
+	}
+
+	/**
+	 * @return the bytes of a GET request for <code>url</code>
+	 */
+	static byte[] requestBytes(URL url, String userAgent, boolean keepAlive) throws IOException {
+		String file = url.getFile();
+		StringBuilder request = new StringBuilder(file.length() + 256);
+		request.append("GET ").append(file.length() == 0 ? "/" : file).append(" HTTP/1.1\r\n");
+		request.append("Host: ").append(url.getHost());
+		if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+			request.append(':').append(url.getPort());
+		}
+		request.append("\r\n");
+		if (userAgent != null) {
+			request.append("User-Agent: ").append(userAgent).append("\r\n");
+		}
+		request.append("Accept: */*\r\n");
+		request.append(keepAlive ? "Connection: keep-alive\r\n\r\n" : "Connection: close\r\n\r\n");
+		return request.toString().getBytes("ISO-8859-1");
+	}
+
+	static int parseStatus(String statusLine) throws IOException {
+		if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+			throw new IOException("Invalid HTTP status line: " + statusLine);
+		}
+		try {
+			return Integer.parseInt(statusLine.substring(9, 12));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid HTTP status line: " + statusLine);
+		}
+	}
+
+	/**
+	 * Reads a CRLF (or LF) terminated line as ISO-8859-1.
+	 * @return the line without terminator, or null on end of stream before any byte was read
+	 */
+	static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1) {
+				if (line.length() == 0) {
+					return null;
+				}
+				throw new EOFException("Unexpected end of stream in HTTP response.");
+			}
+			if (line.length() >= MAX_LINE_LENGTH) {
+				throw new IOException("HTTP response line too long.");
+			}
+			line.append((char) b);
+		}
+		int length = line.length();
+		if (length > 0 && line.charAt(length - 1) == '\r') {
+			line.setLength(length - 1);
+		}
+		return line.toString();
+	}
+
+	private static byte[] readChunked(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+		while (true) {
+			String sizeLine = readLine(in);
+			if (sizeLine == null) {
+				throw new EOFException("Unexpected end of stream in chunked HTTP response.");
+			}
+			int semicolon = sizeLine.indexOf(';');
+			if (semicolon != -1) {
+				sizeLine = sizeLine.substring(0, semicolon);
+			}
+			int size;
+			try {
+				size = Integer.parseInt(sizeLine.trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size in HTTP response.");
+			}
+			if (size < 0 || body.size() + size > MAX_RESPONSE_SIZE) {
+				throw new IOException("HTTP response is too large.");
+			}
+			if (size == 0) {
+				break;
+			}
+			body.write(readFully(in, size));
+			readLine(in);
+		}
+		// Skip any trailers.
+		String trailer;
+		while ((trailer = readLine(in)) != null && trailer.length() > 0) {
+			// ignored
+		}
+		return body.toByteArray();
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		byte[] buffer = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(buffer, offset, length - offset);
+			if (read == -1) {
+				throw new EOFException("Unexpected end of stream in HTTP response.");
+			}
+			offset += read;
+		}
+		return buffer;
+	}
+
+	static byte[] readToEnd(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			if (body.size() + read > MAX_RESPONSE_SIZE) {
+				throw new IOException("HTTP response is too large.");
+			}
+			body.write(buffer, 0, read);
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * @return the host of <code>url</code> to connect to, without the brackets
+	 * around an IPv6 address
+	 */
+	static String socketHost(URL url) {
+		String host = url.getHost();
+		if (host.length() > 1 && host.charAt(0) == '[' && host.charAt(host.length() - 1) == ']') {
+			return host.substring(1, host.length() - 1);
+		}
+		return host;
+	}
+
+	private static String routeOf(URL url) {
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+
+	private static void closeAll(List<Connection> connections) {
+		for (Connection conn : connections) {
+			closeQuietly(conn.socket);
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException ignored) {
+			// Nothing more to do with it.
+		}
+	}
+
+	/**
+	 * Status and framing of a response.
+	 */
+	static class ResponseHead {
+		final int status;
+		final boolean http11;
+		long contentLength = -1;
+		boolean chunked = false;
+		String connection;
+
+		ResponseHead(int status, boolean http11) {
+			this.status = status;
+			this.http11 = http11;
+		}
+
+		/**
+		 * @return whether the body ends where the server closes the connection
+		 */
+		boolean isCloseDelimited() {
+			return status != 204 && status != 304 && !chunked && contentLength < 0;
+		}
+
+		boolean isKeepAlive() {
+			return http11 ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+		}
+	}
+
+	private static class Connection {
+		private final String route;
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+		private long idleSince;
+		private boolean reused = false;
+
+		Connection(String route, Socket socket) throws IOException {
+			this.route = route;
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+	}
+
+	/**
+	 * Thrown when a reused connection turns out to have been closed by the server
+	 * before it sent any part of the response, in which case the request is
+	 * sent again on a new connection.
+	 */
+	private static class StaleConnectionException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		StaleConnectionException(Throwable cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets no wider than 1/64 of
+ * the values they hold, from 1 ns to over 18 minutes. Longer latencies are
+ * counted as the longest one. Recording takes a few atomic increments and never
+ * allocates or locks, so it can be called on every request.
+ *
+ * Values reported are the highest ones in their bucket.
+ */
+public class LatencyHistogram {
+	/* 2^SUB_BITS buckets below 2^SUB_BITS, then 2^(SUB_BITS-1) per power of two. */
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+	private static final int MAX_BITS = 40;
+	private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos a latency, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// Retry until this or a higher value is the maximum.
+		}
+	}
+
+	/**
+	 * @return the number of latencies recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param unit unit of the result
+	 * @return the mean latency, or 0 if none have been recorded
+	 */
+	public double getMean(TimeUnit unit) {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n / unit.toNanos(1);
+	}
+
+	/**
+	 * @param unit unit of the result
+	 * @return the highest latency recorded, or 0 if none have been recorded
+	 */
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param percentile between 0 and 1, for example 0.99
+	 * @param unit unit of the result
+	 * @return the latency that the given share of recorded latencies do not exceed,
+	 * or 0 if none have been recorded
+	 */
+	public long getValueAtPercentile(double percentile, TimeUnit unit) {
+		if (percentile < 0 || percentile > 1) {
+			throw new IllegalArgumentException("percentile must be between 0 and 1.");
+		}
+		long total = 0;
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return unit.convert(Math.min(highestValueOf(i), max.get()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	private static int indexOf(long value) {
+		int shift = 64 - Long.numberOfLeadingZeros(value | (SUB_COUNT - 1)) - SUB_BITS;
+		int sub = (int) (value >>> shift);
+		return shift == 0 ? sub : shift * HALF_COUNT + sub;
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = index / HALF_COUNT - 1;
+		long sub = index - shift * HALF_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount()
+				+ " mean=" + String.format("%.3f", getMean(TimeUnit.MILLISECONDS)) + "ms"
+				+ " p50=" + getValueAtPercentile(0.5, TimeUnit.MICROSECONDS) / 1000.0 + "ms"
+				+ " p99=" + getValueAtPercentile(0.99, TimeUnit.MICROSECONDS) / 1000.0 + "ms"
+				+ " max=" + getMax(TimeUnit.MICROSECONDS) / 1000.0 + "ms";
+	}
+}
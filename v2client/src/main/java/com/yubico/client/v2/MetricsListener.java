@@ -0,0 +1,90 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+/**
+ * Receives measurements of validations, for example to export them to a
+ * monitoring system. Set with {@link VerificationRequester#setMetricsListener(MetricsListener)}
+ * and {@link YubicoClient#setMetricsListener(MetricsListener)}; {@link MetricsRecorder}
+ * is an implementation keeping counters and latency histograms.
+ *
+ * Methods are called on the threads doing the validation, so implementations
+ * must be safe for use by multiple threads at once, and should return quickly.
+ */
+public interface MetricsListener {
+
+	/**
+	 * How a validation by {@link VerificationRequester} ended.
+	 */
+	enum Outcome {
+		/** A response was received. */
+		RESPONSE,
+		/** All requests failed. */
+		FAILURE,
+		/** The time limit passed without a response. */
+		TIMEOUT,
+		/** The validation was cancelled. */
+		CANCELLED
+	}
+
+	/**
+	 * Called when a request to a validation server ends, once for each attempt.
+	 *
+	 * @param endpoint the url of the validation server, without query string
+	 * @param latencyNanos the time from sending the request until the response or error
+	 * @param success true if there was a response
+	 */
+	void requestCompleted(String endpoint, long latencyNanos, boolean success);
+
+	/**
+	 * Called when a failed request to a validation server is going to be retried.
+	 *
+	 * @param endpoint the url of the validation server, without query string
+	 * @param retry the number of the retry, starting at 1
+	 * @param delayNanos the time to wait before retrying
+	 */
+	void requestRetried(String endpoint, int retry, long delayNanos);
+
+	/**
+	 * Called when a validation by {@link VerificationRequester} is done.
+	 *
+	 * @param outcome how the validation ended
+	 * @param latencyNanos the time from starting the validation until it was done
+	 */
+	void fetchCompleted(Outcome outcome, long latencyNanos);
+
+	/**
+	 * Called when a validation by {@link YubicoClient} is done.
+	 *
+	 * @param status the status of the response, or null if validation failed with an exception
+	 * @param latencyNanos the time from starting the validation until it was done
+	 */
+	void verifyCompleted(ResponseStatus status, long latencyNanos);
+}
@@ -0,0 +1,197 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link MetricsListener} keeping counts and {@link LatencyHistogram}s of
+ * requests per validation server, of validation outcomes and of response
+ * statuses, to be read by a monitoring system. One recorder may be set on any
+ * number of requesters and clients.
+ */
+public class MetricsRecorder implements MetricsListener {
+	private static final ResponseStatus[] STATUSES = ResponseStatus.values();
+
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+	private final AtomicLongArray fetchCounts = new AtomicLongArray(Outcome.values().length);
+	private final LatencyHistogram fetchLatency = new LatencyHistogram();
+	/* One count per status, and a last one for validations failing with an exception. */
+	private final AtomicLongArray verifyCounts = new AtomicLongArray(STATUSES.length + 1);
+	private final LatencyHistogram verifyLatency = new LatencyHistogram();
+
+	public void requestCompleted(String endpoint, long latencyNanos, boolean success) {
+		EndpointMetrics metrics = getMetrics(endpoint);
+		metrics.requests.incrementAndGet();
+		if (!success) {
+			metrics.failures.incrementAndGet();
+		}
+		metrics.latency.record(latencyNanos);
+	}
+
+	public void requestRetried(String endpoint, int retry, long delayNanos) {
+		getMetrics(endpoint).retries.incrementAndGet();
+	}
+
+	public void fetchCompleted(Outcome outcome, long latencyNanos) {
+		fetchCounts.incrementAndGet(outcome.ordinal());
+		fetchLatency.record(latencyNanos);
+	}
+
+	public void verifyCompleted(ResponseStatus status, long latencyNanos) {
+		verifyCounts.incrementAndGet(status == null ? STATUSES.length : status.ordinal());
+		verifyLatency.record(latencyNanos);
+	}
+
+	/**
+	 * @return the urls of the validation servers that requests have been sent to
+	 */
+	public Set<String> getEndpoints() {
+		return Collections.unmodifiableSet(new TreeSet<String>(endpoints.keySet()));
+	}
+
+	/**
+	 * @param endpoint a validation server url, as returned by {@link #getEndpoints()}
+	 * @return the number of requests sent to the server, including retries
+	 */
+	public long getRequestCount(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics == null ? 0 : metrics.requests.get();
+	}
+
+	/**
+	 * @param endpoint a validation server url, as returned by {@link #getEndpoints()}
+	 * @return the number of requests to the server that got no response
+	 */
+	public long getRequestFailureCount(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics == null ? 0 : metrics.failures.get();
+	}
+
+	/**
+	 * @param endpoint a validation server url, as returned by {@link #getEndpoints()}
+	 * @return the number of retries of requests to the server
+	 */
+	public long getRetryCount(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics == null ? 0 : metrics.retries.get();
+	}
+
+	/**
+	 * @param endpoint a validation server url, as returned by {@link #getEndpoints()}
+	 * @return the latencies of requests to the server
+	 */
+	public LatencyHistogram getRequestLatency(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics == null ? new LatencyHistogram() : metrics.latency;
+	}
+
+	/**
+	 * @param outcome how validations ended
+	 * @return the number of validations by requesters that ended so
+	 */
+	public long getFetchCount(Outcome outcome) {
+		return fetchCounts.get(outcome.ordinal());
+	}
+
+	/**
+	 * @return the latencies of validations by requesters
+	 */
+	public LatencyHistogram getFetchLatency() {
+		return fetchLatency;
+	}
+
+	/**
+	 * @param status a response status, or null for validations failing with an exception
+	 * @return the number of validations by clients with the given result
+	 */
+	public long getVerifyCount(ResponseStatus status) {
+		return verifyCounts.get(status == null ? STATUSES.length : status.ordinal());
+	}
+
+	/**
+	 * @return the latencies of validations by clients
+	 */
+	public LatencyHistogram getVerifyLatency() {
+		return verifyLatency;
+	}
+
+	private EndpointMetrics getMetrics(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		if (metrics == null) {
+			EndpointMetrics created = new EndpointMetrics();
+			metrics = endpoints.putIfAbsent(endpoint, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (String endpoint : getEndpoints()) {
+			EndpointMetrics metrics = endpoints.get(endpoint);
+			sb.append("request ").append(endpoint)
+					.append(" failures=").append(metrics.failures.get())
+					.append(" retries=").append(metrics.retries.get())
+					.append(' ').append(metrics.latency).append('\n');
+		}
+		sb.append("fetch");
+		for (Outcome outcome : Outcome.values()) {
+			sb.append(' ').append(outcome).append('=').append(getFetchCount(outcome));
+		}
+		sb.append(' ').append(fetchLatency).append('\n');
+		sb.append("verify");
+		for (ResponseStatus status : STATUSES) {
+			long count = getVerifyCount(status);
+			if (count > 0) {
+				sb.append(' ').append(status).append('=').append(count);
+			}
+		}
+		sb.append(" exceptions=").append(getVerifyCount(null));
+		sb.append(' ').append(verifyLatency).append('\n');
+		return sb.toString();
+	}
+
+	private static class EndpointMetrics {
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final LatencyHistogram latency = new LatencyHistogram();
+	}
+}
@@ -0,0 +1,841 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.KeepAliveHttpTransport.ResponseHead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * An {@link AsyncHttpTransport} on non-blocking socket channels, with
+ * {@link SSLEngine} for https. All requests in progress are driven by a fixed
+ * number of selector threads, one by default, so the number of threads stays
+ * the same however many validations are in progress. Used with
+ * {@link VerificationRequester}, no other thread waits for the responses, and
+ * each response is handed to the requester's executor to be parsed and
+ * checked, so slow validation callbacks do not hold up the selector threads.
+ *
+ * Each request is sent on a new connection, closed when the response has been
+ * read. The blocking parts of a request, resolving the host name and the
+ * computations of the TLS handshake, run on a few worker threads ending when
+ * idle, so neither the thread starting the request nor the selector threads
+ * wait for them. Like
+ * {@link KeepAliveHttpTransport}, this transport does not use the JRE's proxy
+ * settings and does not follow redirects.
+ */
+public class NioHttpTransport implements AsyncHttpTransport, Closeable {
+	private static final Logger log = LoggerFactory.getLogger(NioHttpTransport.class);
+
+	/* Validation responses are a few hundred bytes; headers and body together are limited to this. */
+	private static final int MAX_RESPONSE_SIZE = 64 * 1024;
+	/* Host name lookups and handshake tasks are short, so a few threads serve many selector threads. */
+	private static final int WORKER_THREADS = 4;
+	private static final int WORKER_QUEUE_SIZE = 1000;
+	private static final AtomicInteger transportNumber = new AtomicInteger();
+	private static final AtomicLong exchangeNumber = new AtomicLong();
+
+	private final SelectorLoop[] loops;
+	private final SSLContext sslContext;
+	private final String threadPrefix = "yubico-nio-" + transportNumber.incrementAndGet() + "-";
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private ExecutorService workers;
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a transport with one selector thread, using the default
+	 * {@link SSLContext} for https.
+	 */
+	public NioHttpTransport() {
+		this(1, null);
+	}
+
+	/**
+	 * @param selectorThreads number of threads driving the requests, started on first use
+	 * @param sslContext context for https connections, or null for the default one
+	 */
+	public NioHttpTransport(int selectorThreads, SSLContext sslContext) {
+		if (selectorThreads < 1) {
+			throw new IllegalArgumentException("selectorThreads must be positive.");
+		}
+		this.loops = new SelectorLoop[selectorThreads];
+		this.sslContext = sslContext;
+	}
+
+	public Closeable getAsync(URL url, String userAgent, int connectTimeout, int readTimeout, Callback callback) {
+		String protocol = url.getProtocol();
+		if (!"http".equals(protocol) && !"https".equals(protocol)) {
+			return fail(callback, new IOException("Unsupported protocol: " + protocol));
+		}
+		if (userAgent != null && (userAgent.indexOf('\r') != -1 || userAgent.indexOf('\n') != -1)) {
+			throw new IllegalArgumentException("Illegal character in User-Agent.");
+		}
+
+		Exchange exchange;
+		SelectorLoop loop;
+		try {
+			String host = KeepAliveHttpTransport.socketHost(url);
+			int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			SSLEngine engine = null;
+			if ("https".equals(protocol)) {
+				engine = getSslContext().createSSLEngine(host, port);
+				engine.setUseClientMode(true);
+				SSLParameters params = engine.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				engine.setSSLParameters(params);
+			}
+			loop = nextLoop();
+			exchange = new Exchange(loop, workers, host, port, engine,
+					KeepAliveHttpTransport.requestBytes(url, userAgent, false), connectTimeout, readTimeout, callback);
+		} catch (IOException e) {
+			return fail(callback, e);
+		}
+		loop.start(exchange);
+		return exchange;
+	}
+
+	/**
+	 * Sends the request with {@link #getAsync(URL, String, int, int, Callback)}
+	 * and waits for its response.
+	 */
+	public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+		BlockingCallback callback = new BlockingCallback();
+		Closeable request = getAsync(url, userAgent, connectTimeout, readTimeout, callback);
+		try {
+			callback.done.await();
+		} catch (InterruptedException e) {
+			request.close();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while requesting " + url.getHost());
+		}
+		if (callback.failure != null) {
+			throw callback.failure;
+		}
+		return callback.body;
+	}
+
+	/**
+	 * Stops the selector threads, failing the requests still in progress.
+	 */
+	public void close() {
+		SelectorLoop[] toClose;
+		synchronized (loops) {
+			closed = true;
+			toClose = loops.clone();
+			if (workers != null) {
+				workers.shutdown();
+			}
+		}
+		for (SelectorLoop loop : toClose) {
+			if (loop != null) {
+				loop.close();
+			}
+		}
+	}
+
+	private SSLContext getSslContext() throws IOException {
+		if (sslContext != null) {
+			return sslContext;
+		}
+		try {
+			return SSLContext.getDefault();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("No default SSLContext available.", e);
+		}
+	}
+
+	private SelectorLoop nextLoop() throws IOException {
+		int index = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length;
+		synchronized (loops) {
+			if (closed) {
+				throw new IOException("Transport is closed.");
+			}
+			if (workers == null) {
+				workers = createWorkers(threadPrefix + "worker-");
+			}
+			if (loops[index] == null || loops[index].closed) {
+				loops[index] = new SelectorLoop(Selector.open(), threadPrefix + index);
+			}
+			return loops[index];
+		}
+	}
+
+	private static ExecutorService createWorkers(final String prefix) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 60L, SECONDS,
+				new ArrayBlockingQueue<Runnable>(WORKER_QUEUE_SIZE), new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	private static Closeable fail(Callback callback, IOException e) {
+		callback.onFailure(e);
+		return new Closeable() {
+			public void close() {
+				// Already done.
+			}
+		};
+	}
+
+	private static void notifyCallback(Callback callback, InputStream body, IOException failure) {
+		try {
+			if (failure == null) {
+				callback.onResponse(body);
+			} else {
+				callback.onFailure(failure);
+			}
+		} catch (RuntimeException e) {
+			log.warn("Exception in transport callback.", e);
+		}
+	}
+
+	private static class BlockingCallback implements Callback {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile InputStream body;
+		private volatile IOException failure;
+
+		public void onResponse(InputStream body) {
+			this.body = body;
+			done.countDown();
+		}
+
+		public void onFailure(IOException e) {
+			this.failure = e;
+			done.countDown();
+		}
+	}
+
+	/**
+	 * A selector and the thread running it. Channels are only registered,
+	 * read, written and closed on this thread; other threads hand it work
+	 * through its task queue.
+	 */
+	private static class SelectorLoop implements Runnable {
+		private final Selector selector;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		/* Requests with a timeout, soonest first. Only used on the selector thread, and not once closed. */
+		private final TreeSet<Exchange> timeouts = new TreeSet<Exchange>(Exchange.TIMEOUT_ORDER);
+		private volatile boolean closed = false;
+
+		SelectorLoop(Selector selector, String name) {
+			this.selector = selector;
+			Thread thread = new Thread(this, name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void start(final Exchange exchange) {
+			execute(new Runnable() {
+				public void run() {
+					exchange.start();
+				}
+			});
+		}
+
+		void execute(Runnable task) {
+			tasks.add(task);
+			if (closed) {
+				// The loop may have stopped before seeing the task.
+				runTasks();
+			} else {
+				selector.wakeup();
+			}
+		}
+
+		void close() {
+			closed = true;
+			selector.wakeup();
+		}
+
+		public void run() {
+			try {
+				while (!closed) {
+					long wait = expireTimeouts();
+					selector.select(wait);
+					runTasks();
+					for (SelectionKey key : selector.selectedKeys()) {
+						((Exchange) key.attachment()).handle(key);
+					}
+					selector.selectedKeys().clear();
+				}
+			} catch (IOException e) {
+				log.error("Selector failed, closing its connections.", e);
+			} catch (RuntimeException e) {
+				log.error("Selector failed, closing its connections.", e);
+			} finally {
+				closed = true;
+				for (Exchange exchange : timeouts) {
+					// Including requests still resolving their host name, which have no key yet.
+					exchange.fail(new IOException("Transport is closed."));
+				}
+				for (SelectionKey key : selector.keys()) {
+					((Exchange) key.attachment()).fail(new IOException("Transport is closed."));
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					log.debug("Failed to close selector.", e);
+				}
+				runTasks();
+			}
+		}
+
+		private void runTasks() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+
+		/**
+		 * Fails requests whose connect or read timeout has passed, looking only
+		 * at those due.
+		 * @return milliseconds until the next timeout, 0 for none
+		 */
+		private long expireTimeouts() {
+			long now = System.nanoTime();
+			while (!timeouts.isEmpty()) {
+				long remaining = timeouts.first().timeoutAt - now;
+				if (remaining > 0) {
+					// Rounded up, since zero means no timeout.
+					return NANOSECONDS.toMillis(remaining) + 1;
+				}
+				Exchange exchange = timeouts.pollFirst();
+				exchange.fail(new SocketTimeoutException(
+						(exchange.connected ? "Read" : "Connect") + " timed out from " + exchange.host));
+			}
+			return 0;
+		}
+
+		void scheduleTimeout(Exchange exchange) {
+			if (!closed) {
+				timeouts.add(exchange);
+			}
+		}
+
+		void cancelTimeout(Exchange exchange) {
+			if (!closed) {
+				timeouts.remove(exchange);
+			}
+		}
+	}
+
+	/**
+	 * One request and its connection. Apart from {@link #close()}, all methods
+	 * run on the selector thread.
+	 */
+	private static class Exchange implements Closeable {
+		private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+		/* By time of the timeout, then by creation. */
+		static final Comparator<Exchange> TIMEOUT_ORDER = new Comparator<Exchange>() {
+			public int compare(Exchange a, Exchange b) {
+				long diff = a.timeoutAt - b.timeoutAt;
+				if (diff != 0) {
+					return diff < 0 ? -1 : 1;
+				}
+				return a.number < b.number ? -1 : a.number == b.number ? 0 : 1;
+			}
+		};
+
+		private final long number = exchangeNumber.incrementAndGet();
+		private final SelectorLoop loop;
+		private final ExecutorService workers;
+		private final String host;
+		private final int port;
+		private final SSLEngine engine;
+		private final ByteBuffer request;
+		private final long connectTimeoutNanos;
+		private final long readTimeoutNanos;
+		private final Callback callback;
+		private final AtomicBoolean finished = new AtomicBoolean(false);
+
+		private SocketChannel channel;
+		private SelectionKey key;
+		private boolean connected = false;
+		private long timeoutNanos;
+		private long timeoutAt;
+		private boolean runningTasks = false;
+		private ByteBuffer netIn;
+		private ByteBuffer netOut;
+		private ByteBuffer appIn;
+		private byte[] response = new byte[1024];
+		private int responseLength = 0;
+
+		Exchange(SelectorLoop loop, ExecutorService workers, String host, int port, SSLEngine engine, byte[] request,
+				int connectTimeout, int readTimeout, Callback callback) {
+			this.loop = loop;
+			this.workers = workers;
+			this.host = host;
+			this.port = port;
+			this.engine = engine;
+			this.request = ByteBuffer.wrap(request);
+			this.connectTimeoutNanos = MILLISECONDS.toNanos(connectTimeout);
+			this.readTimeoutNanos = MILLISECONDS.toNanos(readTimeout);
+			this.callback = callback;
+			if (engine != null) {
+				netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+				netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+				appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+			} else {
+				appIn = ByteBuffer.allocate(1024);
+			}
+		}
+
+		/**
+		 * Starts the connect timeout and resolves the host name on a worker
+		 * thread, connecting once it is resolved.
+		 */
+		void start() {
+			if (finished.get()) {
+				return;
+			}
+			setTimeout(connectTimeoutNanos);
+			try {
+				runOnWorker(new Runnable() {
+					public void run() {
+						final InetSocketAddress address = new InetSocketAddress(host, port);
+						loop.execute(new Runnable() {
+							public void run() {
+								connect(address);
+							}
+						});
+					}
+				});
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+
+		private void connect(InetSocketAddress address) {
+			if (finished.get()) {
+				return;
+			}
+			try {
+				if (address.isUnresolved()) {
+					throw new UnknownHostException(host);
+				}
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+				if (channel.connect(address)) {
+					connected();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				// For instance a closed selector.
+				fail(new IOException("Failed to start request to " + host, e));
+			}
+		}
+
+		void handle(SelectionKey key) {
+			try {
+				if (!connected && key.isConnectable()) {
+					if (!channel.finishConnect()) {
+						return;
+					}
+					connected();
+				} else {
+					pump();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(new IOException("Request to " + host + " failed.", e));
+			}
+		}
+
+		/**
+		 * Continues the TLS handshake once the delegated tasks of the engine have run.
+		 */
+		private void resume(RuntimeException taskFailure) {
+			runningTasks = false;
+			if (finished.get()) {
+				return;
+			}
+			if (taskFailure != null) {
+				fail(new IOException("TLS handshake with " + host + " failed.", taskFailure));
+				return;
+			}
+			try {
+				pump();
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(new IOException("Request to " + host + " failed.", e));
+			}
+		}
+
+		private void runOnWorker(Runnable work) throws IOException {
+			try {
+				workers.execute(work);
+			} catch (RejectedExecutionException e) {
+				throw new IOException("Too many requests in progress to start one to " + host, e);
+			}
+		}
+
+		/**
+		 * Aborts the request from any thread, without calling the callback.
+		 */
+		public void close() {
+			if (finished.compareAndSet(false, true)) {
+				loop.execute(new Runnable() {
+					public void run() {
+						closeChannel();
+					}
+				});
+			}
+		}
+
+		private void connected() throws IOException {
+			connected = true;
+			setTimeout(readTimeoutNanos);
+			if (engine != null) {
+				engine.beginHandshake();
+			}
+			pump();
+		}
+
+		private void setTimeout(long timeoutNanos) {
+			if (this.timeoutNanos > 0) {
+				// Removed before timeoutAt changes, since the set is ordered by it.
+				loop.cancelTimeout(this);
+			}
+			this.timeoutNanos = timeoutNanos;
+			this.timeoutAt = System.nanoTime() + timeoutNanos;
+			if (timeoutNanos > 0) {
+				loop.scheduleTimeout(this);
+			}
+		}
+
+		/**
+		 * Moves data as far as possible without blocking, then waits for the
+		 * channel to be ready for the next step.
+		 */
+		private void pump() throws IOException {
+			int interest = engine == null ? pumpPlain() : pumpTls();
+			if (interest != 0 && !finished.get()) {
+				key.interestOps(interest);
+			}
+		}
+
+		private int pumpPlain() throws IOException {
+			if (request.hasRemaining()) {
+				channel.write(request);
+				if (request.hasRemaining()) {
+					return SelectionKey.OP_WRITE;
+				}
+			}
+			while (true) {
+				appIn.clear();
+				int read = channel.read(appIn);
+				appIn.flip();
+				if (read == 0) {
+					return SelectionKey.OP_READ;
+				}
+				if (read == -1) {
+					received(true);
+					return 0;
+				}
+				if (received(false)) {
+					return 0;
+				}
+			}
+		}
+
+		private int pumpTls() throws IOException {
+			while (true) {
+				if (finished.get()) {
+					return 0;
+				}
+				if (netOut.position() > 0) {
+					netOut.flip();
+					channel.write(netOut);
+					netOut.compact();
+					if (netOut.position() > 0) {
+						return SelectionKey.OP_WRITE;
+					}
+				}
+				if (runningTasks) {
+					return 0;
+				}
+				SSLEngineResult.HandshakeStatus handshake = engine.getHandshakeStatus();
+				if (handshake == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+					runDelegatedTasks();
+					return 0;
+				} else if (handshake == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+					wrap(EMPTY);
+				} else if (handshake == SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+					if (!unwrap()) {
+						return SelectionKey.OP_READ;
+					}
+				} else if (request.hasRemaining()) {
+					wrap(request);
+				} else if (!unwrap()) {
+					return SelectionKey.OP_READ;
+				}
+			}
+		}
+
+		/**
+		 * Runs the delegated tasks of the engine, such as checking the server's
+		 * certificate, on a worker thread, not selecting the channel meanwhile.
+		 */
+		private void runDelegatedTasks() throws IOException {
+			runningTasks = true;
+			key.interestOps(0);
+			runOnWorker(new Runnable() {
+				public void run() {
+					RuntimeException failure = null;
+					try {
+						Runnable task;
+						while ((task = engine.getDelegatedTask()) != null) {
+							task.run();
+						}
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+					final RuntimeException taskFailure = failure;
+					loop.execute(new Runnable() {
+						public void run() {
+							resume(taskFailure);
+						}
+					});
+				}
+			});
+		}
+
+		private void wrap(ByteBuffer source) throws IOException {
+			SSLEngineResult result = engine.wrap(source, netOut);
+			if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+				if (netOut.position() == 0) {
+					netOut = ByteBuffer.allocate(Math.max(netOut.capacity() * 2, engine.getSession().getPacketBufferSize()));
+				}
+			} else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+				throw new EOFException("Connection closed during TLS handshake with " + host);
+			}
+		}
+
+		/**
+		 * Decrypts what has been received, reading more from the channel when
+		 * that is not enough for a record.
+		 * @return false if nothing more can be read now
+		 */
+		private boolean unwrap() throws IOException {
+			netIn.flip();
+			appIn.clear();
+			SSLEngineResult result;
+			try {
+				result = engine.unwrap(netIn, appIn);
+			} finally {
+				netIn.compact();
+				appIn.flip();
+			}
+			switch (result.getStatus()) {
+			case OK:
+				received(false);
+				return true;
+			case BUFFER_OVERFLOW:
+				appIn = ByteBuffer.allocate(Math.max(appIn.capacity() * 2, engine.getSession().getApplicationBufferSize()));
+				return true;
+			case BUFFER_UNDERFLOW:
+				if (!netIn.hasRemaining()) {
+					netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+				}
+				int read = channel.read(netIn);
+				if (read == -1) {
+					if (connected && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+						try {
+							engine.closeInbound();
+						} catch (SSLException e) {
+							// Without close_notify only a response with a known length is complete.
+							if (!received(false)) {
+								throw e;
+							}
+							return true;
+						}
+						received(true);
+						return true;
+					}
+					throw new EOFException("Connection closed during TLS handshake with " + host);
+				}
+				return read > 0;
+			default:
+				// Closed by the server with close_notify.
+				received(true);
+				return true;
+			}
+		}
+
+		/**
+		 * Appends the bytes in <code>appIn</code> to the response, and completes
+		 * the request if the response is complete.
+		 * @param eof whether the connection has been closed by the server
+		 * @return whether the request is done
+		 */
+		private boolean received(boolean eof) throws IOException {
+			if (finished.get()) {
+				return true;
+			}
+			if (appIn.hasRemaining()) {
+				setTimeout(readTimeoutNanos);
+				int length = appIn.remaining();
+				if (responseLength + length > MAX_RESPONSE_SIZE) {
+					throw new IOException("Response from " + host + " is too large.");
+				}
+				if (responseLength + length > response.length) {
+					response = Arrays.copyOf(response, Math.max(response.length * 2, responseLength + length));
+				}
+				appIn.get(response, responseLength, length);
+				responseLength += length;
+			}
+			byte[] body = parse(eof);
+			if (body == null) {
+				return false;
+			}
+			succeed(body);
+			return true;
+		}
+
+		/**
+		 * @return the body, or null if more of the response is needed
+		 */
+		private byte[] parse(boolean eof) throws IOException {
+			InputStream in = new ByteArrayInputStream(response, 0, responseLength);
+			try {
+				String statusLine = KeepAliveHttpTransport.readLine(in);
+				if (statusLine == null) {
+					throw new EOFException("Connection closed before response from " + host);
+				}
+				ResponseHead head = KeepAliveHttpTransport.readHead(in, statusLine, host);
+				byte[] body;
+				if (head.isCloseDelimited()) {
+					if (!eof) {
+						return null;
+					}
+					body = KeepAliveHttpTransport.readToEnd(in);
+				} else {
+					body = KeepAliveHttpTransport.readBody(in, head, host);
+				}
+				KeepAliveHttpTransport.checkStatus(head, host);
+				return body;
+			} catch (EOFException e) {
+				if (eof) {
+					throw e;
+				}
+				return null;
+			}
+		}
+
+		private void succeed(byte[] body) {
+			if (finished.compareAndSet(false, true)) {
+				closeChannel();
+				notifyCallback(callback, new ByteArrayInputStream(body), null);
+			}
+		}
+
+		void fail(IOException e) {
+			if (finished.compareAndSet(false, true)) {
+				closeChannel();
+				notifyCallback(callback, null, e);
+			}
+		}
+
+		private void closeChannel() {
+			if (timeoutNanos > 0) {
+				loop.cancelTimeout(this);
+			}
+			if (key != null) {
+				key.cancel();
+			}
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.debug("Failed to close connection to {}.", host, e);
+				}
+			}
+		}
+
+		private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minCapacity));
+			buffer.flip();
+			grown.put(buffer);
+			return grown;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * The default {@link NonceGenerator}, creating nonces of 32 hexadecimal digits
+ * from 16 random bytes.
+ *
+ * A generator created with {@link #RandomNonceGenerator()} draws from one
+ * {@link SecureRandom}, which threads take turns to use. One from
+ * {@link #perThread()} gives each thread its own, so that nonces are generated
+ * in parallel on all cores.
+ */
+public class RandomNonceGenerator implements NonceGenerator {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final int BYTES = 16;
+
+	private final SecureRandom random;
+	private final ThreadLocal<SecureRandom> threadRandom;
+
+	/**
+	 * Creates a generator using one new {@link SecureRandom}.
+	 */
+	public RandomNonceGenerator() {
+		this(new SecureRandom());
+	}
+
+	/**
+	 * @param random the source of the random bytes
+	 */
+	public RandomNonceGenerator(SecureRandom random) {
+		if (random == null) {
+			throw new IllegalArgumentException("random must not be null.");
+		}
+		this.random = random;
+		this.threadRandom = null;
+	}
+
+	private RandomNonceGenerator(ThreadLocal<SecureRandom> threadRandom) {
+		this.random = null;
+		this.threadRandom = threadRandom;
+	}
+
+	/**
+	 * Creates a generator with a {@link SecureRandom} for each thread, created on
+	 * its first use and seeded by the JRE. The SHA1PRNG algorithm is used where
+	 * available, since the default one on some platforms is shared by all
+	 * instances.
+	 *
+	 * @return a new generator
+	 */
+	public static RandomNonceGenerator perThread() {
+		return new RandomNonceGenerator(new ThreadLocal<SecureRandom>() {
+			@Override
+			protected SecureRandom initialValue() {
+				try {
+					return SecureRandom.getInstance("SHA1PRNG");
+				} catch (NoSuchAlgorithmException e) {
+					return new SecureRandom();
+				}
+			}
+		});
+	}
+
+	public String nextNonce() {
+		byte[] bytes = new byte[BYTES];
+		(random != null ? random : threadRandom.get()).nextBytes(bytes);
+		char[] hex = new char[BYTES * 2];
+		for (int i = 0; i < BYTES; i++) {
+			hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
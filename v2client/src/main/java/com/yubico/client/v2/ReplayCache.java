@@ -0,0 +1,144 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded cache of OTPs that have recently been used, letting
+ * {@link YubicoClient#setReplayCache(ReplayCache)} reject repeated OTPs with
+ * {@link ResponseStatus#REPLAYED_OTP} without asking the validation servers.
+ *
+ * OTPs are kept until their time to live has passed, or until they are the
+ * oldest ones in a full cache. The cache is split into independently locked
+ * segments, so concurrent validations rarely wait for each other. One cache may
+ * be shared by any number of clients.
+ */
+public class ReplayCache {
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final long ttlNanos;
+
+	/**
+	 * @param maxSize the most OTPs to keep
+	 * @param ttl how long to keep an OTP
+	 * @param unit unit of <code>ttl</code>
+	 */
+	public ReplayCache(int maxSize, long ttl, TimeUnit unit) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive.");
+		}
+		if (ttl <= 0) {
+			throw new IllegalArgumentException("ttl must be positive.");
+		}
+		this.ttlNanos = unit.toNanos(ttl);
+		int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * @param otp an OTP
+	 * @return true if <code>otp</code> has been added and has not expired yet
+	 */
+	public boolean contains(String otp) {
+		Segment segment = segmentFor(otp);
+		synchronized (segment) {
+			Long expires = segment.get(otp);
+			if (expires == null) {
+				return false;
+			}
+			if (System.nanoTime() - expires >= 0) {
+				segment.remove(otp);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Remembers an OTP as used, and removes expired ones.
+	 *
+	 * @param otp an OTP that has been used
+	 */
+	public void add(String otp) {
+		long now = System.nanoTime();
+		Segment segment = segmentFor(otp);
+		synchronized (segment) {
+			// Re-inserting keeps the entries ordered by expiry time.
+			segment.remove(otp);
+			segment.put(otp, now + ttlNanos);
+			Iterator<Long> expiries = segment.values().iterator();
+			while (expiries.hasNext() && now - expiries.next() >= 0) {
+				expiries.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of OTPs kept, including expired ones not removed yet
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	private Segment segmentFor(String otp) {
+		int h = otp.hashCode();
+		h ^= h >>> 16;
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	private static class Segment extends LinkedHashMap<String, Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(Math.min(maxSize, 64), 0.75f);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
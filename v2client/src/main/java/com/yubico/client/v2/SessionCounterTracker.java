@@ -0,0 +1,206 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps the highest session counter and session use seen for each YubiKey, by
+ * public ID, letting {@link YubicoClient#setSessionCounterTracker(SessionCounterTracker)}
+ * reject OTPs the validation servers accepted even though they are older than
+ * one already used.
+ *
+ * The counters are kept in a fixed size open addressing table of primitive
+ * values, either in memory or in a memory-mapped file that keeps them across
+ * restarts. Public IDs of 1 to 15 modhex characters are tracked; other OTPs, and
+ * new YubiKeys once the table is full, are not.
+ */
+public class SessionCounterTracker implements Closeable {
+	private static final int MAGIC = 0x594b5343;
+	private static final int HEADER = 16;
+	private static final int SLOT = 12;
+	private static final int MAX_CAPACITY = 1 << 26;
+	private static final String MODHEX = "cbdefghijklnrtuv";
+
+	private final ByteBuffer table;
+	private final int slots;
+	private final int capacity;
+	private int size;
+
+	/**
+	 * Creates a tracker keeping its counters in memory.
+	 *
+	 * @param capacity the most YubiKeys to track
+	 */
+	public SessionCounterTracker(int capacity) {
+		this(ByteBuffer.allocate(HEADER + slotsFor(capacity) * SLOT), slotsFor(capacity), true);
+	}
+
+	private SessionCounterTracker(ByteBuffer table, int slots, boolean create) {
+		this.table = table;
+		this.slots = slots;
+		this.capacity = slots / 2;
+		if (create) {
+			table.putInt(0, MAGIC);
+			table.putInt(4, slots);
+			table.putInt(8, 0);
+		}
+		this.size = table.getInt(8);
+	}
+
+	/**
+	 * Creates a tracker keeping its counters in a memory-mapped file. An existing
+	 * file is opened with the capacity it was created with.
+	 *
+	 * @param file the file to keep the counters in
+	 * @param capacity the most YubiKeys to track, if the file is created
+	 * @return a tracker using <code>file</code>
+	 * @throws IOException if the file cannot be mapped, or is not a tracker file
+	 */
+	public static SessionCounterTracker open(File file, int capacity) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			boolean create = channel.size() == 0;
+			int slots;
+			if (create) {
+				slots = slotsFor(capacity);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER);
+				channel.read(header, 0);
+				slots = header.getInt(4);
+				if (header.getInt(0) != MAGIC || slots <= 0 || Integer.bitCount(slots) != 1
+						|| slots / 2 > MAX_CAPACITY || channel.size() != HEADER + (long) slots * SLOT) {
+					throw new IOException("Not a session counter file: " + file);
+				}
+			}
+			// The mapping stays valid after the file is closed.
+			MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) slots * SLOT);
+			return new SessionCounterTracker(table, slots, create);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static int slotsFor(int capacity) {
+		if (capacity <= 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY + ".");
+		}
+		// At most half the slots are used, keeping probe sequences short.
+		return Integer.highestOneBit(capacity * 2 - 1) << 1;
+	}
+
+	/**
+	 * Records the counters of a used OTP, unless they are not higher than the
+	 * ones already recorded for its YubiKey.
+	 *
+	 * @param publicId the public ID of the YubiKey
+	 * @param sessionCounter the session counter of the OTP, 0 to 65535
+	 * @param sessionUse the session use of the OTP, 0 to 255
+	 * @return false if the OTP is not newer than one already recorded, otherwise true
+	 */
+	public synchronized boolean update(String publicId, int sessionCounter, int sessionUse) {
+		if (sessionCounter < 0 || sessionCounter > 0xffff) {
+			throw new IllegalArgumentException("sessionCounter must be between 0 and 65535.");
+		}
+		if (sessionUse < 0 || sessionUse > 0xff) {
+			throw new IllegalArgumentException("sessionUse must be between 0 and 255.");
+		}
+		long key = pack(publicId);
+		if (key == 0) {
+			return true;
+		}
+		// Stored off by one, so that 0 is never a recorded value.
+		int value = (sessionCounter << 8 | sessionUse) + 1;
+		int mask = slots - 1;
+		for (int i = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask; ; i = (i + 1) & mask) {
+			int offset = HEADER + i * SLOT;
+			long current = table.getLong(offset);
+			if (current == key) {
+				if (value <= table.getInt(offset + 8)) {
+					return false;
+				}
+				table.putInt(offset + 8, value);
+				return true;
+			}
+			if (current == 0) {
+				if (size < capacity) {
+					table.putInt(offset + 8, value);
+					table.putLong(offset, key);
+					table.putInt(8, ++size);
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of YubiKeys tracked
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Writes the counters to the file, if there is one. Counters written to a
+	 * memory-mapped file survive restarts of the JVM without this, but not
+	 * necessarily of the operating system.
+	 */
+	public synchronized void close() {
+		if (table instanceof MappedByteBuffer) {
+			((MappedByteBuffer) table).force();
+		}
+	}
+
+	/**
+	 * @return the public ID as 4 bits of length and 4 bits per modhex character, or 0 if that does not fit
+	 */
+	private static long pack(String publicId) {
+		int length = publicId == null ? 0 : publicId.length();
+		if (length == 0 || length > 15) {
+			return 0;
+		}
+		long key = length;
+		for (int i = 0; i < length; i++) {
+			int digit = MODHEX.indexOf(publicId.charAt(i));
+			if (digit < 0) {
+				return 0;
+			}
+			key = key << 4 | digit;
+		}
+		return key;
+	}
+}
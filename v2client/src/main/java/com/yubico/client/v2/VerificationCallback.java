@@ -0,0 +1,56 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+/**
+ * Receives the outcome of an asynchronous validation.
+ *
+ * @see YubicoClient#verifyAsync(String)
+ * @see VerificationFuture#addCallback(VerificationCallback)
+ */
+public interface VerificationCallback {
+
+	/**
+	 * Called with the validation response once one is available.
+	 *
+	 * @param response the validation response
+	 */
+	void onResponse(VerificationResponse response);
+
+	/**
+	 * Called if validation failed. The exception is a
+	 * {@link com.yubico.client.v2.exceptions.YubicoVerificationException} or a
+	 * {@link com.yubico.client.v2.exceptions.YubicoValidationFailure}, or a
+	 * {@link java.util.concurrent.CancellationException} if the validation was cancelled.
+	 *
+	 * @param e the reason validation failed
+	 */
+	void onFailure(Exception e);
+}
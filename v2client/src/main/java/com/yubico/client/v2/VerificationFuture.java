@@ -0,0 +1,177 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous validation.
+ *
+ * Callbacks added with {@link #addCallback(VerificationCallback)} are run by
+ * the thread completing the future, or immediately by the calling thread if
+ * the future is already done. They should not block.
+ */
+public class VerificationFuture implements Future<VerificationResponse> {
+	private static final Logger log = LoggerFactory.getLogger(VerificationFuture.class);
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/* Guarded by this. */
+	private List<VerificationCallback> callbacks = new ArrayList<VerificationCallback>();
+	private boolean completed = false;
+	private boolean cancelled = false;
+	private VerificationResponse response;
+	private Exception failure;
+
+	/**
+	 * Completes this future with a response, unless it is already done.
+	 *
+	 * @param response the validation response
+	 * @return true if this call completed the future
+	 */
+	public boolean complete(VerificationResponse response) {
+		return finish(response, null, false);
+	}
+
+	/**
+	 * Completes this future with a failure, unless it is already done.
+	 *
+	 * @param failure the reason validation failed
+	 * @return true if this call completed the future
+	 */
+	public boolean fail(Exception failure) {
+		if (failure == null) {
+			throw new IllegalArgumentException("failure must not be null.");
+		}
+		return finish(null, failure, false);
+	}
+
+	/**
+	 * Cancels the validation, unless it is already done. Outstanding requests
+	 * to the validation servers are cancelled as well.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return finish(null, new CancellationException("Validation cancelled."), true);
+	}
+
+	/**
+	 * Adds a callback to be notified when this future is done.
+	 *
+	 * @param callback the callback to notify
+	 */
+	public void addCallback(VerificationCallback callback) {
+		synchronized (this) {
+			if (!completed) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		notify(callback);
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return completed;
+	}
+
+	public VerificationResponse get() throws InterruptedException, ExecutionException {
+		done.await();
+		return report();
+	}
+
+	public VerificationResponse get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return report();
+	}
+
+	private boolean finish(VerificationResponse response, Exception failure, boolean cancelled) {
+		List<VerificationCallback> toNotify;
+		synchronized (this) {
+			if (completed) {
+				return false;
+			}
+			this.completed = true;
+			this.cancelled = cancelled;
+			this.response = response;
+			this.failure = failure;
+			toNotify = callbacks;
+			callbacks = null;
+		}
+		done.countDown();
+		for (VerificationCallback callback : toNotify) {
+			notify(callback);
+		}
+		return true;
+	}
+
+	private void notify(VerificationCallback callback) {
+		VerificationResponse response;
+		Exception failure;
+		synchronized (this) {
+			response = this.response;
+			failure = this.failure;
+		}
+		try {
+			if (failure == null) {
+				callback.onResponse(response);
+			} else {
+				callback.onFailure(failure);
+			}
+		} catch (RuntimeException e) {
+			log.warn("Exception in verification callback.", e);
+		}
+	}
+
+	private synchronized VerificationResponse report() throws ExecutionException {
+		if (cancelled) {
+			throw (CancellationException) failure;
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return response;
+	}
+}
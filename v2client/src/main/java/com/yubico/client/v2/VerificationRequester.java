@@ -32,40 +32,326 @@ package com.yubico.client.v2;
 	Written by Simon Buckle (simon@webteq.eu), September 2011.
 */
 
+import com.yubico.client.v2.exceptions.YubicoInvalidResponse;
 import com.yubico.client.v2.exceptions.YubicoVerificationException;
 import com.yubico.client.v2.impl.VerificationResponseImpl;
 import java.io.InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.yubico.client.v2.ResponseStatus.BACKEND_ERROR;
 import static com.yubico.client.v2.ResponseStatus.REPLAYED_REQUEST;
+import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Fires off a number of validation requests to each specified URL 
  * in parallel.
+ *
+ * Requests are sent by a thread pool, and the outcome is collected as the
+ * requests complete, so callers using {@link #fetchAsync(List, String, int)}
+ * do not need to wait for it.
  * 
  * @author Simon Buckle (simon@webteq.eu)
  */
-public class VerificationRequester {
-	private final ExecutorCompletionService<VerificationResponse> completionService;
+public class VerificationRequester implements Closeable {
+	private static final Logger log = LoggerFactory.getLogger(VerificationRequester.class);
+
+	/** Number of threads in the default thread pool. */
+	public static final int DEFAULT_THREADS = 100;
+	/** Number of requests the default thread pool queues when all threads are busy. */
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	/**
+	 * System property naming the {@link HttpTransport} class, with a public
+	 * constructor taking no arguments, used by {@link #VerificationRequester()}.
+	 */
+	public static final String TRANSPORT_PROPERTY = "com.yubico.client.v2.transport";
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final HttpTransport transport;
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	/* Keeps deadlines far from overflowing System.nanoTime() arithmetic. */
+	private static final long MAX_TIMEOUT_NANOS = DAYS.toNanos(365);
+
+	private volatile boolean hedging = false;
+	private volatile double hedgePercentile = 0.95;
+	private volatile long hedgeMinDelayNanos = MILLISECONDS.toNanos(10);
+	private volatile long hedgeMaxDelayNanos = SECONDS.toNanos(1);
+	private volatile RetryPolicy retryPolicy = ExponentialBackoffRetryPolicy.DEFAULT;
+	private volatile int breakerThreshold = 0;
+	private volatile long breakerOpenNanos = SECONDS.toNanos(30);
+	private volatile MetricsListener metricsListener;
+	/* Guarded by this. */
+	private ScheduledExecutorService timer;
 	
 	/**
-	 * Sets up thread pool for validation requests.
+	 * Sets up thread pool for validation requests, using a new
+	 * {@link UrlConnectionTransport} for each request, or the transport named by
+	 * the {@value #TRANSPORT_PROPERTY} system property.
 	 */
 	public VerificationRequester() {
-		ThreadPoolExecutor pool = new ThreadPoolExecutor(0, 100, 250L,
-				MILLISECONDS, new SynchronousQueue<Runnable>());
-	    completionService = new ExecutorCompletionService<VerificationResponse>(pool);
+		this(createDefaultTransport());
+	}
+
+	/**
+	 * Sets up thread pool for validation requests, sending them with the given transport.
+	 *
+	 * @param transport the transport to send requests with, for example a
+	 * {@link KeepAliveHttpTransport} to reuse connections between requests
+	 */
+	public VerificationRequester(HttpTransport transport) {
+		this(transport, createExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE), true);
+	}
+
+	/**
+	 * Sends validation requests using the given executor, for example one from
+	 * {@link #createVirtualThreadExecutor()}. The executor is not shut down by
+	 * {@link #close()}.
+	 *
+	 * @param transport the transport to send requests with
+	 * @param executor the executor to run requests on
+	 */
+	public VerificationRequester(HttpTransport transport, ExecutorService executor) {
+		this(transport, executor, false);
+	}
+
+	private VerificationRequester(HttpTransport transport, ExecutorService executor, boolean ownsExecutor) {
+		if (transport == null) {
+			throw new IllegalArgumentException("transport must not be null.");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null.");
+		}
+		this.transport = transport;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	private static HttpTransport createDefaultTransport() {
+		String className = System.getProperty(TRANSPORT_PROPERTY);
+		if (className == null || className.isEmpty()) {
+			return new UrlConnectionTransport();
+		}
+		try {
+			return Class.forName(className).asSubclass(HttpTransport.class).getConstructor().newInstance();
+		} catch (Exception | LinkageError e) {
+			log.warn("Unable to create transport {}, using the default one.", className, e);
+			return new UrlConnectionTransport();
+		}
+	}
+
+	/**
+	 * Creates a bounded thread pool for validation requests. Threads are started
+	 * as needed, up to <code>threads</code>, and stop after being idle for a minute.
+	 * When all threads are busy, up to <code>queueSize</code> requests wait for a
+	 * thread. Beyond that, requests are rejected and fail with a
+	 * {@link YubicoVerificationException} instead of piling up.
+	 *
+	 * @param threads maximum number of threads
+	 * @param queueSize maximum number of waiting requests
+	 * @return a new thread pool using daemon threads
+	 */
+	public static ExecutorService createExecutor(int threads, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Returns the requester shared by all clients created without one, such as
+	 * those from {@link YubicoClient#getClient(Integer, String)}, so that they use
+	 * the same threads, connections and server health. It is created on first use;
+	 * its threads are daemon threads ending when idle, and {@link #close()} does
+	 * nothing. Settings changed on it apply to all of those clients.
+	 *
+	 * @return the shared requester
+	 */
+	public static VerificationRequester getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	private static class DefaultHolder {
+		static final VerificationRequester INSTANCE = new VerificationRequester() {
+			@Override
+			public void close() {
+				// Shared by every client using it; left running.
+			}
+		};
+	}
+
+	/**
+	 * Creates an executor starting a new virtual thread for each request. Virtual
+	 * threads are only available on Java 21 and later.
+	 *
+	 * @return a new virtual thread executor
+	 * @throws UnsupportedOperationException if the runtime does not support virtual threads
+	 */
+	public static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later.", e);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException("Virtual threads are not available.", e);
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException("Virtual threads are not available.", e.getCause());
+		}
+	}
+
+	/**
+	 * Enable or disable hedged requests. Without hedging, a validation request is
+	 * sent to every url at once. With hedging, it is first sent only to the url
+	 * whose server has answered fastest recently. The next url is tried if that
+	 * request fails or gets a {@link ResponseStatus#REPLAYED_REQUEST} or
+	 * {@link ResponseStatus#BACKEND_ERROR} answer, or if it has not been answered
+	 * within the hedge delay. Default is disabled.
+	 *
+	 * @param hedging whether to send hedged requests
+	 * @see #setHedgeDelay(double, long, long, TimeUnit)
+	 */
+	public void setHedging(boolean hedging) {
+		this.hedging = hedging;
+	}
+
+	/**
+	 * Configure how long to wait for a hedged request before also sending it to
+	 * the next url: the given latency percentile of the server it was sent to,
+	 * over its last 100 requests, but no less than <code>minDelay</code> and no
+	 * more than <code>maxDelay</code>. The maximum is also used for servers that
+	 * have not been contacted yet. Default is the 95th percentile, between 10 ms
+	 * and 1 s.
+	 *
+	 * @param percentile latency percentile, between 0 and 1
+	 * @param minDelay the shortest delay
+	 * @param maxDelay the longest delay
+	 * @param unit unit of <code>minDelay</code> and <code>maxDelay</code>
+	 */
+	public void setHedgeDelay(double percentile, long minDelay, long maxDelay, TimeUnit unit) {
+		if (percentile < 0 || percentile > 1) {
+			throw new IllegalArgumentException("percentile must be between 0 and 1.");
+		}
+		if (minDelay < 0 || maxDelay < minDelay) {
+			throw new IllegalArgumentException("Delays must satisfy 0 <= minDelay <= maxDelay.");
+		}
+		this.hedgePercentile = percentile;
+		this.hedgeMinDelayNanos = unit.toNanos(minDelay);
+		this.hedgeMaxDelayNanos = unit.toNanos(maxDelay);
+	}
+
+	/**
+	 * Set the policy deciding how long to wait between retries of a request that
+	 * failed with a network error. The number of retries is also limited by the
+	 * <code>maxRetries</code> argument of each request. Default is
+	 * {@link ExponentialBackoffRetryPolicy#DEFAULT}.
+	 *
+	 * @param retryPolicy the retry policy
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		if (retryPolicy == null) {
+			throw new IllegalArgumentException("retryPolicy must not be null.");
+		}
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Configure the circuit breaker kept for each validation server. After
+	 * <code>failureThreshold</code> consecutive failed requests, counted after
+	 * retries, no requests are sent to the server for <code>openDuration</code>.
+	 * Then one probe request is let through, which closes the breaker if it
+	 * succeeds. If the breakers of all servers of a validation are open, the
+	 * server that failed least recently is tried anyway, so that a short outage
+	 * of a single server does not fail every validation for
+	 * <code>openDuration</code>. Default is off: breakers never open.
+	 *
+	 * @param failureThreshold number of consecutive failures that opens a breaker, 0 to never open
+	 * @param openDuration how long a breaker stays open before a probe is let through
+	 * @param unit unit of <code>openDuration</code>
+	 */
+	public void setCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+		if (failureThreshold < 0) {
+			throw new IllegalArgumentException("negative failureThreshold is not valid.");
+		}
+		if (openDuration < 0) {
+			throw new IllegalArgumentException("negative openDuration is not valid.");
+		}
+		this.breakerThreshold = failureThreshold;
+		this.breakerOpenNanos = unit.toNanos(openDuration);
+	}
+
+	/**
+	 * Report requests, retries and validation outcomes to a listener, for
+	 * example a {@link MetricsRecorder}. Default is none.
+	 *
+	 * @param metricsListener the listener, or null for none
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * @return the health of each validation server contacted so far
+	 */
+	public List<EndpointHealth> getEndpointHealth() {
+		List<EndpointHealth> health = new ArrayList<EndpointHealth>();
+		for (Endpoint endpoint : endpoints.values()) {
+			health.add(endpoint.getHealth());
+		}
+		return health;
+	}
+
+	/**
+	 * @return the transport used to send validation requests
+	 */
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Shuts down the thread pool, unless it was supplied by the caller, and closes
+	 * the transport if it is {@link Closeable}. Requests in progress are allowed
+	 * to finish. Does nothing for the requester from {@link #getDefault()}.
+	 */
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+			}
+		}
+		if (transport instanceof Closeable) {
+			try {
+				((Closeable) transport).close();
+			} catch (IOException e) {
+				log.warn("Failed to close transport.", e);
+			}
+		}
 	}
 
 	/**
@@ -80,7 +366,8 @@ public class VerificationRequester {
 
 	/**
 	 * Fires off a validation request to each url in the list, returning the first one
-	 * that is not {@link ResponseStatus#REPLAYED_REQUEST}
+	 * that is not {@link ResponseStatus#REPLAYED_REQUEST}. Alias of
+	 * <code>fetch(urls, userAgent, maxRetries, 1, TimeUnit.MINUTES)</code>.
 	 * 
 	 * @param urls a list of validation urls to be contacted
 	 * @param userAgent userAgent to send in request, if null one will be generated
@@ -90,24 +377,442 @@ public class VerificationRequester {
 	 * @throws com.yubico.client.v2.exceptions.YubicoVerificationException if validation fails on all urls
 	 */
 	public VerificationResponse fetch(List<String> urls, String userAgent, int maxRetries) throws YubicoVerificationException {
-	    if (maxRetries < 0) {
-		throw new IllegalArgumentException("negative maxRetries is not valid.");
-	    }
-
-	    List<Future<VerificationResponse>> tasks = new ArrayList<Future<VerificationResponse>>();
-	    for(String url : urls) {
-			tasks.add(completionService.submit(createTask(userAgent, url, maxRetries)));
-	    }
-	    VerificationResponse response = null;
+		return fetch(urls, userAgent, maxRetries, 1L, MINUTES);
+	}
+
+	/**
+	 * Fires off a validation request to each url in the list, returning the first one
+	 * that is not {@link ResponseStatus#REPLAYED_REQUEST}, within the given time.
+	 * The time limit covers the whole validation, including connecting, reading,
+	 * retries and waiting for the other servers.
+	 *
+	 * @param urls a list of validation urls to be contacted
+	 * @param userAgent userAgent to send in request, if null one will be generated
+	 * @param maxRetries maximum number of retries in the case of network errors. Must not be negative.
+	 * @param timeout the longest time to wait for a response
+	 * @param unit unit of <code>timeout</code>
+	 * @return {@link VerificationResponse} object from the first server response that is not
+	 * {@link ResponseStatus#REPLAYED_REQUEST}
+	 * @throws com.yubico.client.v2.exceptions.YubicoVerificationException if validation fails on all urls,
+	 * or no response was received in time
+	 */
+	public VerificationResponse fetch(List<String> urls, String userAgent, int maxRetries, long timeout, TimeUnit unit)
+			throws YubicoVerificationException {
+		VerificationFuture future = fetchAsync(urls, userAgent, maxRetries, timeout, unit);
 		try {
-			int tasksDone = 0;
-			Throwable savedException = null;
-			Future<VerificationResponse> futureResponse = completionService.poll(1L, MINUTES);
-			while(futureResponse != null) {
+			return future.get(timeout, unit);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof YubicoVerificationException) {
+				throw (YubicoVerificationException) e.getCause();
+			}
+			throw new YubicoVerificationException("Exception while executing validation.", e.getCause());
+		} catch (TimeoutException e) {
+			YubicoVerificationException timeoutException = new YubicoVerificationException("Validation timeout.");
+			// Failing rather than cancelling the future reports it as timed out.
+			future.fail(timeoutException);
+			throw timeoutException;
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw new YubicoVerificationException("Validation interrupted.", e);
+		}
+	}
+
+	/**
+	 * Alias of <code>fetchAsync(urls, userAgent, maxRetries, 1, TimeUnit.MINUTES)</code>.
+	 */
+	public VerificationFuture fetchAsync(List<String> urls, String userAgent, int maxRetries) {
+		return fetchAsync(urls, userAgent, maxRetries, 1L, MINUTES);
+	}
+
+	/**
+	 * Fires off a validation request to each url in the list without waiting for
+	 * the responses. The returned future completes with the first response that is not
+	 * {@link ResponseStatus#REPLAYED_REQUEST} or {@link ResponseStatus#BACKEND_ERROR},
+	 * in the same way as {@link #fetch(List, String, int, long, TimeUnit)}. Cancelling it
+	 * cancels the requests still in progress.
+	 *
+	 * @param urls a list of validation urls to be contacted
+	 * @param userAgent userAgent to send in request, if null one will be generated
+	 * @param maxRetries maximum number of retries in the case of network errors. Must not be negative.
+	 * @param timeout the time after which the future fails if it has not completed
+	 * @param unit unit of <code>timeout</code>
+	 * @return future completing with the response, or failing with a
+	 * {@link YubicoVerificationException} if validation fails on all urls or times out
+	 */
+	public VerificationFuture fetchAsync(List<String> urls, String userAgent, int maxRetries, long timeout, TimeUnit unit) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("negative maxRetries is not valid.");
+		}
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("timeout must be positive.");
+		}
+		final long start = System.nanoTime();
+		final long deadline = start + Math.min(unit.toNanos(timeout), MAX_TIMEOUT_NANOS);
+
+		final VerificationFuture result = new VerificationFuture();
+		final MetricsListener listener = metricsListener;
+		if (listener != null) {
+			result.addCallback(new VerificationCallback() {
+				public void onResponse(VerificationResponse response) {
+					listener.fetchCompleted(MetricsListener.Outcome.RESPONSE, System.nanoTime() - start);
+				}
+
+				public void onFailure(Exception e) {
+					long now = System.nanoTime();
+					MetricsListener.Outcome outcome;
+					if (e instanceof CancellationException) {
+						outcome = MetricsListener.Outcome.CANCELLED;
+					} else if (now - deadline >= 0) {
+						outcome = MetricsListener.Outcome.TIMEOUT;
+					} else {
+						outcome = MetricsListener.Outcome.FAILURE;
+					}
+					listener.fetchCompleted(outcome, now - start);
+				}
+			});
+		}
+		if (urls.isEmpty()) {
+			result.fail(new YubicoVerificationException("No validation URLs to contact."));
+			return result;
+		}
+
+		boolean hedged = hedging && urls.size() > 1;
+		final Fetch fetch = new Fetch(result, hedged ? fastestFirst(urls) : urls, userAgent, maxRetries, hedged, deadline);
+		result.addCallback(new VerificationCallback() {
+			public void onResponse(VerificationResponse response) {
+				fetch.cancelAll();
+			}
+
+			public void onFailure(Exception e) {
+				fetch.cancelAll();
+			}
+		});
+		fetch.start();
+		fetch.scheduleTimeout();
+		return result;
+	}
+
+	protected VerifyTask createTask(String userAgent, String url, int maxRetries) {
+		return new VerifyTask(url, userAgent, maxRetries, transport, retryPolicy);
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolNumber = new AtomicInteger();
+		private final AtomicInteger threadNumber = new AtomicInteger();
+		private final String prefix = "yubico-verify-" + poolNumber.incrementAndGet() + "-";
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Orders urls by the median latency of their endpoints, keeping the configured
+	 * order between endpoints with the same estimate. Endpoints without samples
+	 * come first so that they get some.
+	 */
+	private List<String> fastestFirst(List<String> urls) {
+		final Map<String, Long> estimates = new HashMap<String, Long>();
+		for (String url : urls) {
+			estimates.put(url, Math.max(0L, getEndpoint(url).getLatencyPercentile(0.5)));
+		}
+		List<String> ordered = new ArrayList<String>(urls);
+		Collections.sort(ordered, new Comparator<String>() {
+			public int compare(String a, String b) {
+				long estimateA = estimates.get(a);
+				long estimateB = estimates.get(b);
+				return estimateA < estimateB ? -1 : (estimateA == estimateB ? 0 : 1);
+			}
+		});
+		return ordered;
+	}
+
+	private long getHedgeDelayNanos(Endpoint endpoint) {
+		long delay = endpoint.getLatencyPercentile(hedgePercentile);
+		if (delay < 0) {
+			return hedgeMaxDelayNanos;
+		}
+		return Math.max(hedgeMinDelayNanos, Math.min(hedgeMaxDelayNanos, delay));
+	}
+
+	private Endpoint getEndpoint(String url) {
+		String key = Endpoint.keyOf(url);
+		Endpoint endpoint = endpoints.get(key);
+		if (endpoint == null) {
+			Endpoint created = new Endpoint(key);
+			endpoint = endpoints.putIfAbsent(key, created);
+			if (endpoint == null) {
+				endpoint = created;
+			}
+		}
+		return endpoint;
+	}
+
+	/**
+	 * @return the timer for hedged requests and deadlines, created on first use
+	 */
+	private synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory());
+			executor.setKeepAliveTime(60L, SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+			executor.setRemoveOnCancelPolicy(true);
+			timer = executor;
+		}
+		return timer;
+	}
+
+	/**
+	 * Sends the requests for one validation and collects their outcome, completing
+	 * its future as soon as the outcome is known. No thread waits for the responses.
+	 *
+	 * Without hedging all requests are sent at once. With hedging they are sent
+	 * one at a time, moving on to the next url when a request fails or gets no
+	 * usable answer, or when it has not answered within the hedge delay.
+	 */
+	private class Fetch {
+		private final VerificationFuture result;
+		private final String userAgent;
+		private final int maxRetries;
+		private final boolean hedged;
+		private final long deadline;
+
+		/* Guarded by this. */
+		private final Deque<String> pending;
+		private final List<String> skipped = new ArrayList<String>();
+		private final List<Future<?>> tasks = new ArrayList<Future<?>>();
+		private int launched = 0;
+		private int tasksDone = 0;
+		private VerificationResponse lastResponse;
+		private Throwable savedException;
+
+		Fetch(VerificationFuture result, List<String> urls, String userAgent, int maxRetries, boolean hedged, long deadline) {
+			this.result = result;
+			this.pending = new ArrayDeque<String>(urls);
+			this.userAgent = userAgent;
+			this.maxRetries = maxRetries;
+			this.hedged = hedged;
+			this.deadline = deadline;
+		}
+
+		void start() {
+			if (hedged) {
+				launchNext();
+			} else {
+				while (launchNext()) {
+					// Send them all.
+				}
+			}
+		}
+
+		void cancelAll() {
+			List<Future<?>> toCancel;
+			synchronized (this) {
+				pending.clear();
+				toCancel = new ArrayList<Future<?>>(tasks);
+			}
+			for (Future<?> task : toCancel) {
+				task.cancel(true);
+			}
+		}
+
+		private boolean launchNext() {
+			String url = null;
+			Endpoint endpoint = null;
+			FutureTask<VerificationResponse> task = null;
+			AsyncRequest asyncRequest = null;
+			boolean finished = false;
+			synchronized (this) {
+				if (result.isDone()) {
+					return false;
+				}
+				// Skip servers whose circuit breaker is open.
+				while (url == null && !pending.isEmpty()) {
+					String candidate = pending.poll();
+					Endpoint candidateEndpoint = getEndpoint(candidate);
+					if (candidateEndpoint.allowRequest(System.nanoTime(), breakerOpenNanos)) {
+						url = candidate;
+						endpoint = candidateEndpoint;
+					} else {
+						skipped.add(candidate);
+					}
+				}
+				if (url == null && launched == 0 && !skipped.isEmpty()) {
+					// Every breaker is open; try the server that failed least recently.
+					for (String candidate : skipped) {
+						Endpoint candidateEndpoint = getEndpoint(candidate);
+						if (endpoint == null || candidateEndpoint.getLastFailure() - endpoint.getLastFailure() < 0) {
+							url = candidate;
+							endpoint = candidateEndpoint;
+						}
+					}
+					skipped.clear();
+				}
+				if (url == null) {
+					finished = tasksDone >= launched;
+				} else if (transport instanceof AsyncHttpTransport) {
+					asyncRequest = new AsyncRequest(url, endpoint);
+					tasks.add(asyncRequest.future);
+					launched++;
+				} else {
+					task = newTask(url, endpoint);
+					tasks.add(task);
+					launched++;
+				}
+			}
+			if (url == null) {
+				if (finished) {
+					finish();
+				}
+				return false;
+			}
+			if (asyncRequest != null) {
+				asyncRequest.start();
+			} else {
 				try {
-					tasksDone++;
-					tasks.remove(futureResponse);
-					response = futureResponse.get();
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					/*
+					 * Not the server's fault, but otherwise like a failed request: the
+					 * requests already sent are still waited for, and the validation only
+					 * fails with this if none of them answers.
+					 */
+					endpoint.recordCancelled();
+					taskDone(null, e);
+					return false;
+				}
+			}
+			if (hedged) {
+				scheduleHedge(url);
+			}
+			return true;
+		}
+
+		/**
+		 * Fails the validation at its deadline, unless it is done by then.
+		 */
+		void scheduleTimeout() {
+			if (result.isDone()) {
+				return;
+			}
+			try {
+				ScheduledFuture<?> timeout = getTimer().schedule(new Runnable() {
+					public void run() {
+						result.fail(new YubicoVerificationException("Validation timeout."));
+					}
+				}, deadline - System.nanoTime(), NANOSECONDS);
+				synchronized (this) {
+					tasks.add(timeout);
+				}
+				if (result.isDone()) {
+					timeout.cancel(false);
+				}
+			} catch (RejectedExecutionException e) {
+				// Closed; fetch() still waits no longer than the timeout.
+			}
+		}
+
+		private void scheduleHedge(String url) {
+			synchronized (this) {
+				if (result.isDone() || pending.isEmpty()) {
+					return;
+				}
+			}
+			try {
+				ScheduledFuture<?> timer = getTimer().schedule(new Runnable() {
+					public void run() {
+						launchNext();
+					}
+				}, getHedgeDelayNanos(getEndpoint(url)), NANOSECONDS);
+				synchronized (this) {
+					tasks.add(timer);
+				}
+			} catch (RejectedExecutionException e) {
+				// Closed; the next url is still tried if this request fails.
+			}
+		}
+
+		private FutureTask<VerificationResponse> newTask(String url, final Endpoint endpoint) {
+			final VerifyTask verifyTask = createTask(userAgent, url, maxRetries);
+			verifyTask.setDeadline(deadline);
+			verifyTask.setMetricsListener(metricsListener, endpoint.getUrl());
+			final AtomicBoolean started = new AtomicBoolean(false);
+			return new FutureTask<VerificationResponse>(new Callable<VerificationResponse>() {
+				public VerificationResponse call() throws Exception {
+					started.set(true);
+					long start = System.nanoTime();
+					/*
+					 * The outcome is recorded here rather than when the task is done, so
+					 * that requests that are still running when the validation completes
+					 * elsewhere count too. Blocking network calls are not interrupted by
+					 * cancellation, so a request to a failing server ends with its own
+					 * exception.
+					 */
+					try {
+						VerificationResponse response = verifyTask.call();
+						endpoint.recordSuccess();
+						return response;
+					} catch (InterruptedException e) {
+						endpoint.recordCancelled();
+						throw e;
+					} catch (Exception e) {
+						recordFailure(endpoint, verifyTask, e);
+						throw e;
+					} finally {
+						// Requests cancelled while running are recorded too, as a lower bound.
+						endpoint.recordLatency(System.nanoTime() - start);
+					}
+				}
+			}) {
+				@Override
+				protected void done() {
+					if (isCancelled()) {
+						if (!started.get()) {
+							endpoint.recordCancelled();
+						}
+					} else {
+						taskDone(this);
+					}
+				}
+			};
+		}
+
+		/**
+		 * Counts a failed request against its server, unless it only failed
+		 * because the caller's deadline left it too little time.
+		 */
+		private void recordFailure(Endpoint endpoint, VerifyTask verifyTask, Throwable e) {
+			if (verifyTask.isDeadlineTimeout(e)) {
+				endpoint.recordCancelled();
+			} else {
+				endpoint.recordFailure(System.nanoTime(), breakerThreshold);
+			}
+		}
+
+		private void taskDone(FutureTask<VerificationResponse> task) {
+			VerificationResponse response = null;
+			Throwable exception = null;
+			try {
+				response = task.get();
+			} catch (ExecutionException e) {
+				exception = e.getCause();
+			} catch (InterruptedException e) {
+				// Cannot happen, the task is done.
+				exception = e;
+			}
+			taskDone(response, exception);
+		}
+
+		private void taskDone(VerificationResponse response, Throwable exception) {
+			VerificationResponse complete = null;
+			boolean next = false;
+			boolean finished = false;
+			synchronized (this) {
+				tasksDone++;
+				if (response != null) {
+					lastResponse = response;
 					/**
 					 * If the response returned is REPLAYED_REQUEST keep looking at responses
 					 * and hope we get something else. REPLAYED_REQUEST will be returned if a
@@ -119,42 +824,85 @@ public class VerificationRequester {
 					 * sends a valid response
 					 * @see https://github.com/Yubico/yubico-java-client/issues/12
 					 */
-					if(!response.getStatus().equals(REPLAYED_REQUEST) && !response.getStatus().equals(BACKEND_ERROR)) {
-						break;
+					if (!response.getStatus().equals(REPLAYED_REQUEST) && !response.getStatus().equals(BACKEND_ERROR)) {
+						complete = response;
 					}
-				} catch (CancellationException ignored) {
-					// this would be thrown by old cancelled calls.
-					tasksDone--;
-				} catch (ExecutionException e) {
+				} else {
 					// tuck the real exception away and use it if we don't get any valid answers.
-					savedException = e.getCause();
+					savedException = exception;
 				}
-				if(tasksDone >= urls.size()) {
-					break;
+				if (complete == null) {
+					next = !pending.isEmpty();
+					finished = !next && tasksDone >= launched;
 				}
-				futureResponse = completionService.poll(1L, MINUTES);
 			}
-			if(futureResponse == null || response == null) {
-				if(savedException != null) {
-					throw new YubicoVerificationException(
-							"Exception while executing validation.", savedException);
-				} else {
-					throw new YubicoVerificationException("Validation timeout.");
-				}
+
+			if (complete != null) {
+				result.complete(complete);
+			} else if (finished) {
+				finish();
+			} else if (next) {
+				launchNext();
 			}
-		} catch (InterruptedException e) {
-			throw new YubicoVerificationException("Validation interrupted.", e);
 		}
-	    
-		for(Future<VerificationResponse> task : tasks) {
-			task.cancel(true);
+
+		/**
+		 * A request sent with an {@link AsyncHttpTransport}, recording its outcome
+		 * like the tasks from {@link #newTask(String, Endpoint)} do.
+		 */
+		private class AsyncRequest {
+			private final VerificationFuture future = new VerificationFuture();
+			private final VerifyTask verifyTask;
+
+			AsyncRequest(String url, final Endpoint endpoint) {
+				verifyTask = createTask(userAgent, url, maxRetries);
+				verifyTask.setDeadline(deadline);
+				verifyTask.setMetricsListener(metricsListener, endpoint.getUrl());
+				final long start = System.nanoTime();
+				future.addCallback(new VerificationCallback() {
+					public void onResponse(VerificationResponse response) {
+						endpoint.recordSuccess();
+						endpoint.recordLatency(System.nanoTime() - start);
+						taskDone(response, null);
+					}
+
+					public void onFailure(Exception e) {
+						if (future.isCancelled()) {
+							// Aborted, so the outcome of the request is unknown.
+							endpoint.recordCancelled();
+							return;
+						}
+						recordFailure(endpoint, verifyTask, e);
+						endpoint.recordLatency(System.nanoTime() - start);
+						taskDone(null, e);
+					}
+				});
+			}
+
+			void start() {
+				verifyTask.callAsync(future, getTimer(), executor);
+			}
 		}
-		
-	    return response;
-	}
 
-	protected VerifyTask createTask(String userAgent, String url, int maxRetries) {
-		return new VerifyTask(url, userAgent, maxRetries);
+		/**
+		 * Completes the future when no more requests will be sent, with the last
+		 * response received or else the last exception.
+		 */
+		private void finish() {
+			VerificationResponse response;
+			Throwable exception;
+			synchronized (this) {
+				response = lastResponse;
+				exception = savedException;
+			}
+			if (response != null) {
+				result.complete(response);
+			} else if (exception != null) {
+				result.fail(new YubicoVerificationException("Exception while executing validation.", exception));
+			} else {
+				result.fail(new YubicoVerificationException("No validation server is available; all are failing."));
+			}
+		}
 	}
 
 	/**
@@ -162,11 +910,21 @@ public class VerificationRequester {
 	 */
 	static class VerifyTask implements Callable<VerificationResponse> {
 
+		private static final int DEFAULT_TIMEOUT_MILLIS = 15000;
+
 		private final Logger log = LoggerFactory.getLogger(VerifyTask.class);
 
 		private final String url;
 		private final String userAgent;
 		private final int maxRetries;
+		private final HttpTransport transport;
+		private final RetryPolicy retryPolicy;
+		private boolean hasDeadline = false;
+		private long deadline;
+		/* Set once an attempt gets a shorter timeout because of the deadline. */
+		private volatile boolean deadlineLimited = false;
+		private MetricsListener metricsListener;
+		private String endpoint;
 		
 		/**
 		 * Set up a VerifyTask for the Yubico Validation protocol v2
@@ -175,12 +933,57 @@ public class VerificationRequester {
 		 * @param maxRetries the maximum number of times to retry on network or server error
 		 */
 		public VerifyTask(String url, String userAgent, int maxRetries) {
+			this(url, userAgent, maxRetries, new UrlConnectionTransport());
+		}
+
+		/**
+		 * Set up a VerifyTask for the Yubico Validation protocol v2
+		 * @param url the url to be used
+		 * @param userAgent the userAgent to be sent to the server, or NULL and one is calculated
+		 * @param maxRetries the maximum number of times to retry on network or server error
+		 * @param transport the transport to send the request with
+		 */
+		public VerifyTask(String url, String userAgent, int maxRetries, HttpTransport transport) {
+			this(url, userAgent, maxRetries, transport, ExponentialBackoffRetryPolicy.DEFAULT);
+		}
+
+		/**
+		 * Set up a VerifyTask for the Yubico Validation protocol v2
+		 * @param url the url to be used
+		 * @param userAgent the userAgent to be sent to the server, or NULL and one is calculated
+		 * @param maxRetries the maximum number of times to retry on network or server error
+		 * @param transport the transport to send the request with
+		 * @param retryPolicy decides how long to wait before each retry, and when to give up early
+		 */
+		public VerifyTask(String url, String userAgent, int maxRetries, HttpTransport transport, RetryPolicy retryPolicy) {
 			if (maxRetries < 0) {
 				throw new IllegalArgumentException("negative maxRetries is not valid.");
 			}
 			this.url = url;
 			this.userAgent = userAgent;
 			this.maxRetries = maxRetries;
+			this.transport = transport;
+			this.retryPolicy = retryPolicy;
+		}
+
+		/**
+		 * Limit the time spent on this task, including retries. Connect and read
+		 * timeouts are shortened to fit before the deadline.
+		 * @param deadline {@link System#nanoTime()} value at which to give up
+		 */
+		void setDeadline(long deadline) {
+			this.hasDeadline = true;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Report each request and retry to a listener.
+		 * @param metricsListener the listener, or null for none
+		 * @param endpoint the url of the validation server, reported to the listener
+		 */
+		void setMetricsListener(MetricsListener metricsListener, String endpoint) {
+			this.metricsListener = metricsListener;
+			this.endpoint = endpoint;
 		}
 		
 		/**
@@ -197,32 +1000,242 @@ public class VerificationRequester {
 			}
 		}
 
+		/**
+		 * Do the validation query for previous URL without blocking, with a
+		 * transport that must be an {@link AsyncHttpTransport}. Retries are
+		 * scheduled on <code>timer</code>. Cancelling <code>future</code> aborts
+		 * the request in progress and any further retries.
+		 * @param future completed with the response, or failed with the last error
+		 * @param timer runs the retries
+		 * @param completer parses the response and completes <code>future</code>, so
+		 * that neither that nor the future's callbacks run on the transport's thread
+		 */
+		void callAsync(VerificationFuture future, ScheduledExecutorService timer, Executor completer) {
+			URL url;
+			try {
+				url = new URL(this.url);
+			} catch (IOException e) {
+				future.fail(e);
+				return;
+			}
+			new AsyncCall(url, future, timer, completer).run();
+		}
+
+		/**
+		 * One request sent with an {@link AsyncHttpTransport}, and its retries.
+		 * Each attempt is started by {@link #run()}, on the calling thread or the
+		 * timer, and completes on a thread of the transport, which hands the
+		 * outcome to the completer.
+		 */
+		private class AsyncCall implements Runnable, AsyncHttpTransport.Callback {
+			private final URL url;
+			private final VerificationFuture future;
+			private final ScheduledExecutorService timer;
+			private final Executor completer;
+			private final long start = System.nanoTime();
+			private int retry = 0;
+			private long attempt;
+			private volatile Closeable request;
+			private volatile Future<?> scheduled;
+
+			AsyncCall(URL url, VerificationFuture future, ScheduledExecutorService timer, Executor completer) {
+				this.url = url;
+				this.future = future;
+				this.timer = timer;
+				this.completer = completer;
+				future.addCallback(new VerificationCallback() {
+					public void onResponse(VerificationResponse response) {
+						// Nothing to clean up.
+					}
+
+					public void onFailure(Exception e) {
+						if (e instanceof CancellationException) {
+							abort();
+						}
+					}
+				});
+			}
+
+			public void run() {
+				if (future.isDone()) {
+					return;
+				}
+				attempt = System.nanoTime();
+				int timeout;
+				try {
+					timeout = getTimeoutMillis();
+				} catch (SocketTimeoutException e) {
+					onFailure(e);
+					return;
+				}
+				request = ((AsyncHttpTransport) transport).getAsync(url, userAgent, timeout, timeout, this);
+				if (future.isCancelled()) {
+					abort();
+				}
+			}
+
+			public void onResponse(final InputStream body) {
+				if (metricsListener != null) {
+					metricsListener.requestCompleted(endpoint, System.nanoTime() - attempt, true);
+				}
+				complete(new Runnable() {
+					public void run() {
+						try {
+							future.complete(new VerificationResponseImpl(body));
+						} catch (IOException e) {
+							log.warn("Exception when requesting {}.", url.getHost(), e);
+							future.fail(e);
+						} catch (YubicoInvalidResponse e) {
+							future.fail(e);
+						}
+					}
+				});
+			}
+
+			public void onFailure(final IOException e) {
+				if (metricsListener != null) {
+					metricsListener.requestCompleted(endpoint, System.nanoTime() - attempt, false);
+				}
+				retry++;
+				long delay = retry > maxRetries ? -1 : retryPolicy.getRetryDelayNanos(retry, System.nanoTime() - start);
+				if (delay < 0 || future.isDone() || (hasDeadline && System.nanoTime() + delay >= deadline)) {
+					log.warn("Exception when requesting {}.", url.getHost(), e);
+					fail(e);
+					return;
+				}
+				log.warn("Exception when requesting {}, retrying in {} ms.",
+						new Object[] { url.getHost(), NANOSECONDS.toMillis(delay), e });
+				if (metricsListener != null) {
+					metricsListener.requestRetried(endpoint, retry, delay);
+				}
+				try {
+					scheduled = timer.schedule(this, delay, NANOSECONDS);
+				} catch (RejectedExecutionException rejected) {
+					fail(e);
+				}
+			}
+
+			private void fail(final IOException e) {
+				complete(new Runnable() {
+					public void run() {
+						future.fail(e);
+					}
+				});
+			}
+
+			private void complete(Runnable completion) {
+				try {
+					completer.execute(completion);
+				} catch (RejectedExecutionException e) {
+					// Completed here rather than lost when the executor is full or closed.
+					completion.run();
+				}
+			}
+
+			private void abort() {
+				Future<?> retry = scheduled;
+				if (retry != null) {
+					retry.cancel(false);
+				}
+				Closeable current = request;
+				if (current != null) {
+					try {
+						current.close();
+					} catch (IOException e) {
+						log.debug("Failed to abort request to {}.", url.getHost(), e);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the connect and read timeout for the next attempt: 15 seconds,
+		 * or less to fit before the deadline
+		 * @throws SocketTimeoutException if the deadline has passed
+		 */
+		private int getTimeoutMillis() throws SocketTimeoutException {
+			if (!hasDeadline) {
+				return DEFAULT_TIMEOUT_MILLIS;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				deadlineLimited = true;
+				throw new SocketTimeoutException("Validation deadline has passed.");
+			}
+			// Rounded up, since a timeout of zero means none.
+			long millis = NANOSECONDS.toMillis(remaining) + 1;
+			if (millis < DEFAULT_TIMEOUT_MILLIS) {
+				deadlineLimited = true;
+				return (int) millis;
+			}
+			return DEFAULT_TIMEOUT_MILLIS;
+		}
+
+		/**
+		 * Tells whether a request failed only because the caller's deadline cut
+		 * it short: it timed out, and its timeout had been shortened to fit before
+		 * the deadline. Such a failure says nothing about the server.
+		 *
+		 * @param e the exception the request failed with
+		 * @return true if <code>e</code> is a timeout caused by the deadline
+		 */
+		boolean isDeadlineTimeout(Throwable e) {
+			if (!deadlineLimited) {
+				return false;
+			}
+			for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+				if (cause instanceof SocketTimeoutException) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the response, retrying on network errors as allowed by
+		 * <code>maxRetries</code> and the retry policy. If the thread is interrupted,
+		 * for instance because the validation was completed by another server, no
+		 * more retries are made and the last error is thrown.
+		 */
 		protected InputStream getResponseStream(URL url) throws IOException {
-			int attempt = 0;
-			IOException lastException;
+			long start = System.nanoTime();
+			int retry = 0;
 
-			do {
+			while (true) {
+				IOException lastException;
+				long attempt = System.nanoTime();
 				try {
-					HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-					conn.setRequestProperty("User-Agent", userAgent);
-					conn.setConnectTimeout(15000);
-					conn.setReadTimeout(15000);
-					return conn.getInputStream();
+					int timeout = getTimeoutMillis();
+					InputStream response = transport.get(url, userAgent, timeout, timeout);
+					if (metricsListener != null) {
+						metricsListener.requestCompleted(endpoint, System.nanoTime() - attempt, true);
+					}
+					return response;
 				} catch (IOException e) {
-					log.warn("Exception when requesting {}, retrying.", url.getHost(), e);
 					lastException = e;
 				}
+				if (metricsListener != null) {
+					metricsListener.requestCompleted(endpoint, System.nanoTime() - attempt, false);
+				}
 
+				retry++;
+				long delay = retry > maxRetries ? -1 : retryPolicy.getRetryDelayNanos(retry, System.nanoTime() - start);
+				if (delay < 0 || Thread.currentThread().isInterrupted()
+						|| (hasDeadline && System.nanoTime() + delay >= deadline)) {
+					throw lastException;
+				}
+				log.warn("Exception when requesting {}, retrying in {} ms.",
+						new Object[] { url.getHost(), NANOSECONDS.toMillis(delay), lastException });
+				if (metricsListener != null) {
+					metricsListener.requestRetried(endpoint, retry, delay);
+				}
 				try {
-					// Delay a little bit and hope whatever is happening network-wise clears up.
-					Thread.sleep(500);
+					NANOSECONDS.sleep(delay);
 				} catch (InterruptedException e) {
-					// Oh well. Try again anyway.
+					Thread.currentThread().interrupt();
+					throw lastException;
 				}
-				attempt++;
-			} while (attempt <= maxRetries);
-
-			throw lastException;
+			}
 		}
 	}
 }
@@ -40,17 +40,44 @@ import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 /**
  * Base class for doing YubiKey validations using version 2 of the validation protocol.
+ * <p>
+ * Each validation uses a copy of the settings taken when it starts, so changing a
+ * setting does not affect validations in progress. A client configured with its
+ * setters may be used by several threads once it is configured and safely published
+ * to them, but changing its settings while other threads validate needs external
+ * synchronization. A client built with {@link #builder()} has no such restriction.
  */
 
 public abstract class YubicoClient {
     private static final Logger log = LoggerFactory.getLogger(YubicoClient.class);
+    private static final NonceGenerator DEFAULT_NONCE_GENERATOR = new RandomNonceGenerator();
 
     protected Integer clientId;
     protected byte[] key;
     protected Integer sync;
     protected int maxRetries = 5;
+    protected long timeoutMillis = 60000;
+    protected boolean coalesceRequests = false;
+    protected ReplayCache replayCache;
+    protected SessionCounterTracker sessionCounterTracker;
+    protected MetricsListener metricsListener;
+    protected NonceGenerator nonceGenerator = DEFAULT_NONCE_GENERATOR;
+    private volatile boolean frozen = false;
     protected String wsapi_urls[] = {
                "https://api.yubico.com/wsapi/2.0/verify"
     		};
@@ -69,6 +96,211 @@ public abstract class YubicoClient {
      */
     public abstract VerificationResponse verify(String otp) throws YubicoVerificationException, YubicoValidationFailure;
 
+    /**
+     * Validate an OTP using a webservice call to one or more ykval validation servers,
+     * giving up if there is no result within the given time. The time limit covers
+     * the whole validation, including connecting, retries and waiting for responses.
+     * {@link #verify(String)} uses the time limit set with {@link #setTimeout(long, TimeUnit)}.
+     *
+     * @param otp YubiKey OTP
+     * @param timeout the longest time to wait for the result
+     * @param unit unit of <code>timeout</code>
+     * @return result of the webservice validation operation
+     * @throws com.yubico.client.v2.exceptions.YubicoVerificationException for validation errors, like unreachable
+     * servers, or if there is no result in time
+     * @throws YubicoValidationFailure for validation failures, like non matching OTPs in request and response
+     * @throws IllegalArgumentException for arguments that are not correctly formatted OTP strings.
+     */
+    public VerificationResponse verify(String otp, long timeout, TimeUnit unit)
+            throws YubicoVerificationException, YubicoValidationFailure {
+        return await(verifyAsync(otp, timeout, unit), timeout, unit);
+    }
+
+    /**
+     * Validate an OTP without waiting for the result. The same checks are made as
+     * by {@link #verify(String)}; validation and verification errors are reported
+     * through the returned future instead of being thrown.
+     *
+     * @param otp YubiKey OTP
+     * @return future completing with the result of the webservice validation operation
+     * @throws IllegalArgumentException for arguments that are not correctly formatted OTP strings.
+     */
+    public VerificationFuture verifyAsync(String otp) {
+        return verifyAsync(otp, timeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * Validate an OTP without waiting for the result, as {@link #verifyAsync(String)},
+     * failing the returned future if there is no result within the given time.
+     *
+     * This implementation calls {@link #verify(String)} on a shared pool of daemon
+     * threads, and subclasses able to send requests without blocking a thread
+     * should override it.
+     *
+     * @param otp YubiKey OTP
+     * @param timeout the time after which the future fails if it has not completed
+     * @param unit unit of <code>timeout</code>
+     * @return future completing with the result of the webservice validation operation
+     * @throws IllegalArgumentException for arguments that are not correctly formatted OTP strings.
+     */
+    public VerificationFuture verifyAsync(final String otp, long timeout, TimeUnit unit) {
+        if (!isValidOTPFormat(otp)) {
+            throw new IllegalArgumentException("The OTP is not a valid format");
+        }
+        final VerificationFuture result = new VerificationFuture();
+        try {
+            final Future<?> task = DefaultExecutorHolder.INSTANCE.submit(new Runnable() {
+                public void run() {
+                    try {
+                        result.complete(verify(otp));
+                    } catch (Exception e) {
+                        result.fail(e);
+                    }
+                }
+            });
+            result.addCallback(new VerificationCallback() {
+                public void onResponse(VerificationResponse response) {
+                }
+
+                public void onFailure(Exception e) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.fail(new YubicoVerificationException("Too many validations in progress.", e));
+        }
+        return result;
+    }
+
+    /**
+     * Validate several OTPs at once, as {@link #verify(String)}, sending the requests
+     * for all of them before waiting for any result. Each distinct OTP is validated
+     * once.
+     *
+     * @param otps YubiKey OTPs
+     * @return a completed future for each OTP, in the order of <code>otps</code>, with
+     * either the result of its validation or the reason it failed
+     * @throws IllegalArgumentException if any of the arguments is not a correctly formatted OTP string, in which
+     * case none are validated
+     */
+    public Map<String, VerificationFuture> verifyAll(Collection<String> otps) {
+        return verifyAll(otps, timeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * Validate several OTPs at once, as {@link #verifyAll(Collection)}, waiting at
+     * most the given time for all of the results. Validations without a result in
+     * time fail with a {@link YubicoVerificationException}.
+     *
+     * @param otps YubiKey OTPs
+     * @param timeout the longest time to wait for all results
+     * @param unit unit of <code>timeout</code>
+     * @return a completed future for each OTP, in the order of <code>otps</code>, with
+     * either the result of its validation or the reason it failed
+     * @throws IllegalArgumentException if any of the arguments is not a correctly formatted OTP string, in which
+     * case none are validated
+     */
+    public Map<String, VerificationFuture> verifyAll(Collection<String> otps, long timeout, TimeUnit unit) {
+        for (String otp : otps) {
+            if (!isValidOTPFormat(otp)) {
+                throw new IllegalArgumentException("The OTP is not a valid format");
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Map<String, VerificationFuture> futures = new LinkedHashMap<String, VerificationFuture>();
+        for (String otp : otps) {
+            if (!futures.containsKey(otp)) {
+                futures.put(otp, verifyAsync(otp, timeout, unit));
+            }
+        }
+
+        for (Map.Entry<String, VerificationFuture> entry : futures.entrySet()) {
+            try {
+                await(entry.getValue(), deadline - System.nanoTime(), NANOSECONDS);
+            } catch (YubicoVerificationException e) {
+                if (!entry.getValue().isDone() || entry.getValue().isCancelled()) {
+                    // Timed out or interrupted; await cancelled the validation.
+                    VerificationFuture failed = new VerificationFuture();
+                    failed.fail(e);
+                    entry.setValue(failed);
+                }
+            } catch (YubicoValidationFailure e) {
+                // Kept in the future.
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for the result of a validation, cancelling it if there is none in time.
+     *
+     * @param future the pending validation
+     * @param timeout the longest time to wait
+     * @param unit unit of <code>timeout</code>
+     * @return the validation response
+     * @throws YubicoVerificationException if the validation failed with one, or there was no result in time
+     * @throws YubicoValidationFailure if the validation failed with one
+     */
+    protected static VerificationResponse await(VerificationFuture future, long timeout, TimeUnit unit)
+            throws YubicoVerificationException, YubicoValidationFailure {
+        try {
+            return future.get(timeout, unit);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof YubicoVerificationException) {
+                throw (YubicoVerificationException) e.getCause();
+            }
+            if (e.getCause() instanceof YubicoValidationFailure) {
+                throw (YubicoValidationFailure) e.getCause();
+            }
+            throw new YubicoVerificationException("Exception while executing validation.", e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new YubicoVerificationException("Validation timeout.");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new YubicoVerificationException("Validation interrupted.", e);
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        static final ExecutorService INSTANCE = VerificationRequester.createExecutor(
+                VerificationRequester.DEFAULT_THREADS, VerificationRequester.DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Start configuring a client that cannot be changed once built. Such a client
+     * copies its settings when it is built and only reads that copy afterwards, so
+     * it is safe to share between threads, and it does the work that only depends
+     * on its configuration once instead of for every validation.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Makes this client unchangeable; its setters throw afterwards.
+     */
+    protected void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Called after any setting has changed, and when {@link #getWsapiUrls()} hands
+     * out the array of URLs, which may then be changed in place. Subclasses keeping
+     * anything computed from the settings drop it here, and subclasses changing the
+     * protected fields directly call this afterwards.
+     */
+    protected void settingsChanged() {
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("This client was built by a YubicoClient.Builder and cannot be changed.");
+        }
+    }
+
     /**
      * Get the ykval client identifier used to identify the application.
      * @return ykval client identifier
@@ -90,7 +322,9 @@ public abstract class YubicoClient {
      * @param clientId  ykval client identifier
      */
     public void setClientId(Integer clientId) {
+        checkMutable();
         this.clientId = clientId;
+        settingsChanged();
     }
 
     /**
@@ -99,7 +333,9 @@ public abstract class YubicoClient {
      * @see YubicoClient#setClientId(Integer)
      */
     public void setKey(String key) {
+        checkMutable();
         this.key = Base64.decodeBase64(key.getBytes());
+        settingsChanged();
     }
     
     /**
@@ -117,7 +353,9 @@ public abstract class YubicoClient {
      * @param sync percentage or strings 'secure' or 'fast'
      */
     public void setSync(Integer sync) {
+    	checkMutable();
     	this.sync = sync;
+    	settingsChanged();
     }
 
     /**
@@ -126,18 +364,123 @@ public abstract class YubicoClient {
      * @param maxRetries maximum number of retries. Must not be negative.
      */
     public void setMaxRetries(int maxRetries) {
+        checkMutable();
         if (maxRetries < 0) {
             throw new IllegalArgumentException("negative maxRetries is not valid.");
         }
 
         this.maxRetries = maxRetries;
+        settingsChanged();
+    }
+
+    /**
+     * Set the longest time {@link #verify(String)} and {@link #verifyAsync(String)}
+     * wait for a validation result, including connecting, retries and waiting for
+     * responses. Default is 1 minute.
+     * @param timeout the time limit. Must be positive.
+     * @param unit unit of <code>timeout</code>
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        checkMutable();
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive.");
+        }
+        this.timeoutMillis = Math.max(1, unit.toMillis(timeout));
+        settingsChanged();
+    }
+
+    /**
+     * Set whether concurrent validations of the same OTP share one request to the
+     * validation servers. A login form submitted twice, or an OTP checked twice by
+     * a chain of login modules, then gets one result for both callers instead of
+     * a REPLAYED_OTP response for the second one. Only validations in progress at
+     * the same time are shared; an OTP validated again afterwards is sent again.
+     * Validations are shared by all clients with the same client ID, API key,
+     * sync level and validation URLs that have this enabled, including clients
+     * created for separate logins. A caller
+     * joining a validation in progress gets its result within the time limit of
+     * the caller that started it. Default is false.
+     * <p>
+     * Note that while a validation is in progress, anyone submitting the same OTP
+     * gets the same result, so only enable this where that is acceptable.
+     * @param coalesceRequests true to share concurrent validations of an OTP
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        checkMutable();
+        this.coalesceRequests = coalesceRequests;
+        settingsChanged();
+    }
+
+    /**
+     * Set a cache of recently used OTPs. OTPs that the validation servers have
+     * accepted or reported as replayed are added to it, and validating one of them
+     * again then returns a {@link ResponseStatus#REPLAYED_OTP} response without
+     * contacting the validation servers. Such a response has only the status and
+     * the OTP set. Default is no cache.
+     * @param replayCache the cache to use, may be shared by several clients, or null for none
+     */
+    public void setReplayCache(ReplayCache replayCache) {
+        checkMutable();
+        this.replayCache = replayCache;
+        settingsChanged();
+    }
+
+    /**
+     * Set a tracker of the session counters of each YubiKey. When a validation
+     * server accepts an OTP whose session counters are not higher than those of an
+     * OTP from the same YubiKey accepted before, as an out of sync server might,
+     * a {@link ResponseStatus#REPLAYED_OTP} response is returned instead. The
+     * counters are encrypted in the OTP, so this is checked on the response rather
+     * than before sending the request; a {@link ReplayCache} rejects repeated OTPs
+     * without contacting the servers. Default is no tracker.
+     * @param sessionCounterTracker the tracker to use, may be shared by several clients, or null for none
+     */
+    public void setSessionCounterTracker(SessionCounterTracker sessionCounterTracker) {
+        checkMutable();
+        this.sessionCounterTracker = sessionCounterTracker;
+        settingsChanged();
+    }
+
+    /**
+     * Report the status and latency of each validation to a listener, for example
+     * a {@link MetricsRecorder}. Requests to the validation servers are reported
+     * by the listener set on the {@link VerificationRequester}. Default is none.
+     * @param metricsListener the listener, or null for none
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        checkMutable();
+        this.metricsListener = metricsListener;
+        settingsChanged();
+    }
+
+    /**
+     * Set the generator of the nonces sent with each request. Default is a
+     * {@link RandomNonceGenerator} shared by all clients; use
+     * {@link RandomNonceGenerator#perThread()} when validating on many threads.
+     * @param nonceGenerator the generator to use
+     */
+    public void setNonceGenerator(NonceGenerator nonceGenerator) {
+        checkMutable();
+        if (nonceGenerator == null) {
+            throw new IllegalArgumentException("nonceGenerator must not be null.");
+        }
+        this.nonceGenerator = nonceGenerator;
+        settingsChanged();
     }
     
     /**
-     * Get the list of URLs that will be used for validating OTPs.
+     * Get the list of URLs that will be used for validating OTPs. For a client that
+     * was not built with {@link #builder()} this is the array the client uses, and
+     * changes made to it before the next validation starts apply to that and later
+     * validations. To change it again after that, call this method or
+     * {@link #setWsapiUrls(String[])} again.
      * @return list of base URLs
      */
     public String[] getWsapiUrls() {
+		if (frozen) {
+			return wsapi_urls.clone();
+		}
+		settingsChanged();
 		return wsapi_urls;
 	}
 
@@ -148,10 +491,12 @@ public abstract class YubicoClient {
      * @param wsapi  list of base URLs
      */
 	public void setWsapiUrls(String[] wsapi) {
+		checkMutable();
 		for (String url : wsapi) {
 			warnIfDeprecatedUrl(url);
 		}
 		this.wsapi_urls = wsapi;
+		settingsChanged();
 	}
 
 	protected void warnIfDeprecatedUrl(String url) {
@@ -172,7 +517,9 @@ public abstract class YubicoClient {
 	 * @param userAgent the user agent used in requests
 	 */
 	public void setUserAgent(String userAgent) {
+		checkMutable();
 		this.userAgent = userAgent;
+		settingsChanged();
 	}
 	
 	/**
@@ -231,4 +578,201 @@ public abstract class YubicoClient {
 		}
 		return OTP_MIN_LEN <= len && len <= OTP_MAX_LEN;
 	}
+
+    /**
+     * Configures a client that cannot be changed once built. Each method sets the
+     * same setting as the corresponding setter of {@link YubicoClient}, and
+     * settings not given keep their defaults.
+     */
+    public static class Builder {
+        private Integer clientId;
+        private String key;
+        private Integer sync;
+        private String[] wsapiUrls;
+        private String userAgent;
+        private Integer maxRetries;
+        private long timeout;
+        private TimeUnit timeoutUnit;
+        private boolean coalesceRequests;
+        private ReplayCache replayCache;
+        private SessionCounterTracker sessionCounterTracker;
+        private MetricsListener metricsListener;
+        private NonceGenerator nonceGenerator;
+        private VerificationRequester requester;
+
+        Builder() {
+        }
+
+        /**
+         * @param clientId Retrieved from https://upgrade.yubico.com/getapikey; required
+         * @return this builder
+         * @see YubicoClient#setClientId(Integer)
+         */
+        public Builder clientId(Integer clientId) {
+            this.clientId = clientId;
+            return this;
+        }
+
+        /**
+         * @param key Retrieved from https://upgrade.yubico.com/getapikey
+         * @return this builder
+         * @see YubicoClient#setKey(String)
+         */
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        /**
+         * @param sync percentage or strings 'secure' or 'fast'
+         * @return this builder
+         * @see YubicoClient#setSync(Integer)
+         */
+        public Builder sync(Integer sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        /**
+         * @param wsapiUrls list of base URLs
+         * @return this builder
+         * @see YubicoClient#setWsapiUrls(String[])
+         */
+        public Builder wsapiUrls(String... wsapiUrls) {
+            this.wsapiUrls = wsapiUrls.clone();
+            return this;
+        }
+
+        /**
+         * @param userAgent the user agent used in requests
+         * @return this builder
+         * @see YubicoClient#setUserAgent(String)
+         */
+        public Builder userAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * @param maxRetries maximum number of retries
+         * @return this builder
+         * @see YubicoClient#setMaxRetries(int)
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param timeout the time limit
+         * @param unit unit of <code>timeout</code>
+         * @return this builder
+         * @see YubicoClient#setTimeout(long, TimeUnit)
+         */
+        public Builder timeout(long timeout, TimeUnit unit) {
+            this.timeout = timeout;
+            this.timeoutUnit = unit;
+            return this;
+        }
+
+        /**
+         * @param coalesceRequests true to share concurrent validations of an OTP
+         * @return this builder
+         * @see YubicoClient#setCoalesceRequests(boolean)
+         */
+        public Builder coalesceRequests(boolean coalesceRequests) {
+            this.coalesceRequests = coalesceRequests;
+            return this;
+        }
+
+        /**
+         * @param replayCache the cache to use
+         * @return this builder
+         * @see YubicoClient#setReplayCache(ReplayCache)
+         */
+        public Builder replayCache(ReplayCache replayCache) {
+            this.replayCache = replayCache;
+            return this;
+        }
+
+        /**
+         * @param sessionCounterTracker the tracker to use
+         * @return this builder
+         * @see YubicoClient#setSessionCounterTracker(SessionCounterTracker)
+         */
+        public Builder sessionCounterTracker(SessionCounterTracker sessionCounterTracker) {
+            this.sessionCounterTracker = sessionCounterTracker;
+            return this;
+        }
+
+        /**
+         * @param metricsListener the listener
+         * @return this builder
+         * @see YubicoClient#setMetricsListener(MetricsListener)
+         */
+        public Builder metricsListener(MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * @param nonceGenerator the generator to use
+         * @return this builder
+         * @see YubicoClient#setNonceGenerator(NonceGenerator)
+         */
+        public Builder nonceGenerator(NonceGenerator nonceGenerator) {
+            this.nonceGenerator = nonceGenerator;
+            return this;
+        }
+
+        /**
+         * @param requester the requester used to contact the validation servers;
+         * default is {@link VerificationRequester#getDefault()}
+         * @return this builder
+         */
+        public Builder requester(VerificationRequester requester) {
+            this.requester = requester;
+            return this;
+        }
+
+        /**
+         * Creates the client. Deprecated validation URLs are logged here, once.
+         *
+         * @return a client with the configured settings
+         * @throws IllegalStateException if no client ID has been set
+         * @throws IllegalArgumentException if a setting is not valid
+         */
+        public YubicoClient build() {
+            if (clientId == null) {
+                throw new IllegalStateException("clientId must be set.");
+            }
+            YubicoClient client = new YubicoClientImpl(clientId,
+                    requester == null ? VerificationRequester.getDefault() : requester);
+            if (key != null) {
+                client.setKey(key);
+            }
+            client.setSync(sync);
+            if (wsapiUrls != null) {
+                client.setWsapiUrls(wsapiUrls);
+            }
+            if (userAgent != null) {
+                client.setUserAgent(userAgent);
+            }
+            if (maxRetries != null) {
+                client.setMaxRetries(maxRetries);
+            }
+            if (timeoutUnit != null) {
+                client.setTimeout(timeout, timeoutUnit);
+            }
+            client.setCoalesceRequests(coalesceRequests);
+            client.setReplayCache(replayCache);
+            client.setSessionCounterTracker(sessionCounterTracker);
+            client.setMetricsListener(metricsListener);
+            if (nonceGenerator != null) {
+                client.setNonceGenerator(nonceGenerator);
+            }
+            client.freeze();
+            return client;
+        }
+    }
 }
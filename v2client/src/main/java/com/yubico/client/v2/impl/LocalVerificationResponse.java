@@ -0,0 +1,105 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.impl;
+
+import com.yubico.client.v2.ResponseStatus;
+import com.yubico.client.v2.VerificationResponse;
+import com.yubico.client.v2.YubicoClient;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response decided by the client itself, without asking the validation servers.
+ */
+class LocalVerificationResponse implements VerificationResponse {
+    private final ResponseStatus status;
+    private final String otp;
+
+    LocalVerificationResponse(ResponseStatus status, String otp) {
+        this.status = status;
+        this.otp = otp;
+    }
+
+    public boolean isOk() {
+        return status == ResponseStatus.OK;
+    }
+
+    public String getH() {
+        return null;
+    }
+
+    public String getT() {
+        return null;
+    }
+
+    public ResponseStatus getStatus() {
+        return status;
+    }
+
+    public String getTimestamp() {
+        return null;
+    }
+
+    public String getSessioncounter() {
+        return null;
+    }
+
+    public String getSessionuse() {
+        return null;
+    }
+
+    public String getSl() {
+        return null;
+    }
+
+    public String getOtp() {
+        return otp;
+    }
+
+    public String getNonce() {
+        return null;
+    }
+
+    public Map<String, String> getKeyValueMap() {
+        Map<String, String> map = new TreeMap<String, String>();
+        map.put("otp", otp);
+        map.put("status", status.toString());
+        return map;
+    }
+
+    public String getPublicId() {
+        return YubicoClient.getPublicId(otp);
+    }
+
+    public String toString() {
+        return otp + ":" + status;
+    }
+}
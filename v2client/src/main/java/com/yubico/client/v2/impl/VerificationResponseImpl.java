@@ -36,15 +36,25 @@ import com.yubico.client.v2.VerificationResponse;
 import com.yubico.client.v2.ResponseStatus;
 import com.yubico.client.v2.exceptions.YubicoInvalidResponse;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
+/**
+ * A validation server response, parsed from its bytes in one pass. Lines are
+ * <code>key=value</code> pairs separated by CR, LF or CRLF; other lines are ignored.
+ *
+ * Besides the known fields, the positions of all pairs are kept. From them the
+ * signed part of the response, all pairs but <code>h</code> sorted by key, is
+ * assembled without going through {@link #getKeyValueMap()}.
+ */
 public class VerificationResponseImpl implements VerificationResponse {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private String h;
     private String t;
     private ResponseStatus status;
@@ -54,53 +64,210 @@ public class VerificationResponseImpl implements VerificationResponse {
     private String sl;
     private String otp;
     private String nonce;
-    
-    private final Map<String, String> keyValueMap = new TreeMap<String, String>();
+
+    private final byte[] data;
+    /* Start of key, end of key (the '='), and end of value of each pair. */
+    private int[] pairs = new int[30];
+    private int pairCount = 0;
+    private final byte[] signatureInput;
+    /* Guarded by this. */
+    private Map<String, String> keyValueMap;
 
     public VerificationResponseImpl(InputStream inStream) throws IOException, YubicoInvalidResponse {
         if(inStream == null) {
             throw new IOException("InputStream argument was null");
         }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(inStream));
-
-        String inputLine;
-        while ((inputLine = in.readLine()) != null) {
-            int ix=inputLine.indexOf("=");
-            if(ix==-1) continue; // Invalid line
-            String key=inputLine.substring(0,ix);
-            String val=inputLine.substring(ix+1);
-
-            if ("h".equals(key)) {
-                this.h = val;
-            } else if ("t".equals(key)) {
-                this.t = val;
-            } else if ("otp".equals(key)) {
-                this.otp = val;
-            } else if ("status".equals(key))  {
-                this.status = ResponseStatus.valueOf(val);
-            } else if ("timestamp".equals(key)) {
-                this.timestamp = val;
-            } else if ("sessioncounter".equals(key)) {
-                this.sessioncounter = val;
-            } else if ("sessionuse".equals(key)) {
-                this.sessionuse = val;
-            } else if ("sl".equals(key)) {
-                this.sl = val;
-            } else if ("nonce".equals(key)) {
-                this.nonce = val;
+        try {
+            data = readFully(inStream);
+        } finally {
+            inStream.close();
+        }
+
+        int lineStart = 0;
+        int separator = -1;
+        for (int i = 0; i <= data.length; i++) {
+            byte b = i < data.length ? data[i] : (byte) '\n';
+            if (b == '=' && separator == -1) {
+                separator = i;
+            } else if (b == '\n' || b == '\r') {
+                if (separator != -1) {
+                    addPair(lineStart, separator, i);
+                }
+                lineStart = i + 1;
+                separator = -1;
             }
-            
-            keyValueMap.put(key, val);
         }
-        in.close();
-        
+
         if(status == null) {
         	throw new YubicoInvalidResponse("Invalid response, contains no status.");
         }
+        signatureInput = buildSignatureInput();
+    }
+
+    private void addPair(int keyStart, int keyEnd, int valueEnd) {
+        if (pairCount * 3 == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+        }
+        pairs[pairCount * 3] = keyStart;
+        pairs[pairCount * 3 + 1] = keyEnd;
+        pairs[pairCount * 3 + 2] = valueEnd;
+        pairCount++;
+
+        int valueStart = keyEnd + 1;
+        switch (keyEnd - keyStart) {
+            case 1:
+                if (data[keyStart] == 'h') {
+                    this.h = string(valueStart, valueEnd);
+                } else if (data[keyStart] == 't') {
+                    this.t = string(valueStart, valueEnd);
+                }
+                break;
+            case 2:
+                if (keyEquals(keyStart, "sl")) {
+                    this.sl = string(valueStart, valueEnd);
+                }
+                break;
+            case 3:
+                if (keyEquals(keyStart, "otp")) {
+                    this.otp = string(valueStart, valueEnd);
+                }
+                break;
+            case 5:
+                if (keyEquals(keyStart, "nonce")) {
+                    this.nonce = string(valueStart, valueEnd);
+                }
+                break;
+            case 6:
+                if (keyEquals(keyStart, "status")) {
+                    this.status = ResponseStatus.valueOf(string(valueStart, valueEnd));
+                }
+                break;
+            case 9:
+                if (keyEquals(keyStart, "timestamp")) {
+                    this.timestamp = string(valueStart, valueEnd);
+                }
+                break;
+            case 10:
+                if (keyEquals(keyStart, "sessionuse")) {
+                    this.sessionuse = string(valueStart, valueEnd);
+                }
+                break;
+            case 14:
+                if (keyEquals(keyStart, "sessioncounter")) {
+                    this.sessioncounter = string(valueStart, valueEnd);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private boolean keyEquals(int keyStart, String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (data[keyStart + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public Map<String, String> getKeyValueMap() {
+    private String string(int start, int end) {
+        return new String(data, start, end - start, UTF8);
+    }
+
+    /**
+     * The part of the response covered by its signature: every <code>key=value</code>
+     * pair except <code>h</code>, sorted by key and joined with <code>&amp;</code>.
+     * When a key occurs more than once, the last value is used.
+     *
+     * @return the UTF-8 encoded signature input; callers must not modify it
+     */
+    public byte[] getSignatureInput() {
+        return signatureInput;
+    }
+
+    private byte[] buildSignatureInput() {
+        // Pair indexes sorted by key, later pairs first among equal keys. Insertion
+        // sort, since responses have about ten pairs.
+        int[] order = new int[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            int pair = i;
+            int j = i;
+            while (j > 0 && comparePairs(order[j - 1], pair) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = pair;
+        }
+
+        byte[] out = new byte[data.length];
+        int length = 0;
+        int previous = -1;
+        for (int pair : order) {
+            int keyStart = pairs[pair * 3];
+            boolean isH = pairs[pair * 3 + 1] - keyStart == 1 && data[keyStart] == 'h';
+            if (isH || (previous != -1 && compareKeys(previous, pair) == 0)) {
+                continue;
+            }
+            previous = pair;
+            if (length > 0) {
+                out[length++] = '&';
+            }
+            int pairLength = pairs[pair * 3 + 2] - keyStart;
+            System.arraycopy(data, keyStart, out, length, pairLength);
+            length += pairLength;
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    /**
+     * Orders pairs by key, and among equal keys the later pair first.
+     */
+    private int comparePairs(int a, int b) {
+        int keys = compareKeys(a, b);
+        return keys != 0 ? keys : b - a;
+    }
+
+    /**
+     * Compares the keys of two pairs in the order of {@link String#compareTo(String)},
+     * for ASCII keys.
+     */
+    private int compareKeys(int a, int b) {
+        int aStart = pairs[a * 3];
+        int aLength = pairs[a * 3 + 1] - aStart;
+        int bStart = pairs[b * 3];
+        int bLength = pairs[b * 3 + 1] - bStart;
+        for (int i = 0; i < Math.min(aLength, bLength); i++) {
+            int diff = (data[aStart + i] & 0xff) - (data[bStart + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        byte[] buffer = new byte[512];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public synchronized Map<String, String> getKeyValueMap() {
+        if (keyValueMap == null) {
+            keyValueMap = new TreeMap<String, String>();
+            for (int i = 0; i < pairCount; i++) {
+                int keyEnd = pairs[i * 3 + 1];
+                keyValueMap.put(string(pairs[i * 3], keyEnd), string(keyEnd + 1, pairs[i * 3 + 2]));
+            }
+        }
     	return keyValueMap;
     }
     
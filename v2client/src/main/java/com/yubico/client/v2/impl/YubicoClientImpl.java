@@ -38,7 +38,14 @@
 
 package com.yubico.client.v2.impl;
 
-import com.yubico.client.v2.Signature;
+import com.yubico.client.v2.HmacSigner;
+import com.yubico.client.v2.MetricsListener;
+import com.yubico.client.v2.NonceGenerator;
+import com.yubico.client.v2.ReplayCache;
+import com.yubico.client.v2.ResponseStatus;
+import com.yubico.client.v2.SessionCounterTracker;
+import com.yubico.client.v2.VerificationCallback;
+import com.yubico.client.v2.VerificationFuture;
 import com.yubico.client.v2.YubicoClient;
 import com.yubico.client.v2.VerificationResponse;
 import com.yubico.client.v2.VerificationRequester;
@@ -46,28 +53,66 @@ import com.yubico.client.v2.exceptions.YubicoSignatureException;
 import com.yubico.client.v2.exceptions.YubicoVerificationException;
 import com.yubico.client.v2.exceptions.YubicoValidationFailure;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
-import static com.yubico.client.v2.HttpUtils.toQueryString;
+import static com.yubico.client.v2.HttpUtils.appendEncoded;
+import static com.yubico.client.v2.HttpUtils.appendParameter;
 import static com.yubico.client.v2.ResponseStatus.BAD_SIGNATURE;
+import static com.yubico.client.v2.ResponseStatus.OK;
+import static com.yubico.client.v2.ResponseStatus.REPLAYED_OTP;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class YubicoClientImpl extends YubicoClient {
+    private static final Logger log = LoggerFactory.getLogger(YubicoClientImpl.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private final VerificationRequester validationService;
+    /* Set to null by every change of the settings, and copied again on the next validation. */
+    private volatile Template template;
+    private final Object templateLock = new Object();
+
+    /**
+     * Validations in progress when requests are coalesced, by client ID and OTP.
+     * Shared by all clients, since a login module creates a client for each login.
+     */
+    private static final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
 
     YubicoClientImpl(VerificationRequester validationService) {
         this.validationService = validationService;
     }
 
     /**
-     * Creates a YubicoClient that will be using the given Client ID.
+     * Creates a YubicoClient that will be using the given Client ID, sending its
+     * requests through the shared {@link VerificationRequester#getDefault()}.
      *
      * @param clientId Retrieved from https://upgrade.yubico.com/getapikey
      */
     public YubicoClientImpl(Integer clientId) {
-        this(new VerificationRequester());
+        this(VerificationRequester.getDefault());
+        this.clientId = clientId;
+    }
+
+    /**
+     * Creates a YubicoClient that will be using the given Client ID, sending its
+     * requests through the given requester.
+     *
+     * @param clientId Retrieved from https://upgrade.yubico.com/getapikey
+     * @param validationService the requester used to contact the validation servers
+     */
+    public YubicoClientImpl(Integer clientId, VerificationRequester validationService) {
+        this(validationService);
         this.clientId = clientId;
     }
 
@@ -82,6 +127,21 @@ public class YubicoClientImpl extends YubicoClient {
         setKey(apiKey);
     }
 
+    /**
+     * Creates a YubicoClient that will be using the given Client ID and API key,
+     * sending its requests through the given requester. This allows configuring
+     * how requests are sent, for example with a {@link com.yubico.client.v2.KeepAliveHttpTransport}.
+     *
+     * @param clientId Retrieved from https://upgrade.yubico.com/getapikey
+     * @param apiKey Retrieved from https://upgrade.yubico.com/getapikey
+     * @param validationService the requester used to contact the validation servers
+     */
+    public YubicoClientImpl(Integer clientId, String apiKey, VerificationRequester validationService) {
+        this(validationService);
+        this.clientId = clientId;
+        setKey(apiKey);
+    }
+
     /**
      * Creates a YubicoClient that will be using the given Client ID and API key.
      *
@@ -99,74 +159,314 @@ public class YubicoClientImpl extends YubicoClient {
      * {@inheritDoc}
      */
     public VerificationResponse verify(String otp) throws YubicoVerificationException, YubicoValidationFailure {
+        Template template = getTemplate();
+        return verify(template, otp, template.timeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public VerificationResponse verify(String otp, long timeout, TimeUnit unit)
+            throws YubicoVerificationException, YubicoValidationFailure {
+        return verify(getTemplate(), otp, timeout, unit);
+    }
+
+    private VerificationResponse verify(Template template, String otp, long timeout, TimeUnit unit)
+            throws YubicoVerificationException, YubicoValidationFailure {
+        MetricsListener listener = template.metricsListener;
+        if (listener == null) {
+            return verifyNow(template, otp, timeout, unit);
+        }
+        long start = System.nanoTime();
+        ResponseStatus status = null;
+        try {
+            VerificationResponse response = verifyNow(template, otp, timeout, unit);
+            status = response.getStatus();
+            return response;
+        } finally {
+            listener.verifyCompleted(status, System.nanoTime() - start);
+        }
+    }
+
+    private VerificationResponse verifyNow(Template template, String otp, long timeout, TimeUnit unit)
+            throws YubicoVerificationException, YubicoValidationFailure {
+        VerificationResponse replayed = checkReplayed(template, otp);
+        if (replayed != null) {
+            return replayed;
+        }
+        if (template.coalesceRequests) {
+            return await(startVerify(template, otp, timeout, unit), timeout, unit);
+        }
+        Request request = createRequest(template, otp);
+        VerificationResponse response = validationService.fetch(request.validationUrls, template.userAgent,
+                template.maxRetries, timeout, unit);
+        return checkResponse(request, response);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public VerificationFuture verifyAsync(String otp) {
+        Template template = getTemplate();
+        return verifyAsync(template, otp, template.timeoutMillis, MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public VerificationFuture verifyAsync(String otp, long timeout, TimeUnit unit) {
+        return verifyAsync(getTemplate(), otp, timeout, unit);
+    }
+
+    private VerificationFuture verifyAsync(Template template, String otp, long timeout, TimeUnit unit) {
+        final MetricsListener listener = template.metricsListener;
+        if (listener == null) {
+            return startVerify(template, otp, timeout, unit);
+        }
+        final long start = System.nanoTime();
+        VerificationFuture result = startVerify(template, otp, timeout, unit);
+        result.addCallback(new VerificationCallback() {
+            public void onResponse(VerificationResponse response) {
+                listener.verifyCompleted(response.getStatus(), System.nanoTime() - start);
+            }
+
+            public void onFailure(Exception e) {
+                listener.verifyCompleted(null, System.nanoTime() - start);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, VerificationFuture> verifyAll(Collection<String> otps) {
+        return verifyAll(otps, getTemplate().timeoutMillis, MILLISECONDS);
+    }
+
+    private VerificationFuture startVerify(Template template, String otp, long timeout, TimeUnit unit) {
+        VerificationResponse replayed = checkReplayed(template, otp);
+        if (replayed != null) {
+            VerificationFuture result = new VerificationFuture();
+            result.complete(replayed);
+            return result;
+        }
+        if (!template.coalesceRequests) {
+            return send(template, otp, timeout, unit);
+        }
         if (!isValidOTPFormat(otp)) {
             throw new IllegalArgumentException("The OTP is not a valid format");
         }
-        Map<String, String> requestMap = new TreeMap<String, String>();
-        String nonce = UUID.randomUUID().toString().replaceAll("-", "");
-        requestMap.put("nonce", nonce);
-        requestMap.put("id", clientId.toString());
-        requestMap.put("otp", otp);
-        requestMap.put("timestamp", "1");
-        if (sync != null) {
-            requestMap.put("sl", sync.toString());
+        String key = template.flightPrefix + otp;
+        while (true) {
+            Flight flight = inFlight.get(key);
+            if (flight == null) {
+                // The creator joins before the flight is published, so others cannot abandon it first.
+                Flight created = new Flight(key);
+                VerificationFuture result = created.join();
+                flight = inFlight.putIfAbsent(key, created);
+                if (flight == null) {
+                    try {
+                        created.start(send(template, otp, timeout, unit));
+                    } catch (RuntimeException e) {
+                        created.settle(null, e);
+                        throw e;
+                    }
+                    return result;
+                }
+            }
+            VerificationFuture result = flight.join();
+            if (result != null) {
+                return result;
+            }
+            // Every caller cancelled the validation before it could be joined.
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return a local REPLAYED_OTP response if the replay cache has seen <code>otp</code>, otherwise null
+     */
+    private static VerificationResponse checkReplayed(Template template, String otp) {
+        ReplayCache cache = template.replayCache;
+        if (cache != null && otp != null && cache.contains(otp)) {
+            return new LocalVerificationResponse(REPLAYED_OTP, otp);
         }
+        return null;
+    }
 
-        String queryString;
+    private VerificationFuture send(Template template, String otp, long timeout, TimeUnit unit) {
+        final VerificationFuture result = new VerificationFuture();
+        final Request request;
         try {
-            queryString = toQueryString(requestMap);
-        } catch (UnsupportedEncodingException e) {
-            throw new YubicoVerificationException("Failed to encode parameter.", e);
+            request = createRequest(template, otp);
+        } catch (YubicoVerificationException e) {
+            result.fail(e);
+            return result;
         }
 
-        if (key != null) {
-            queryString = sign(queryString);
+        final VerificationFuture fetch = validationService.fetchAsync(request.validationUrls, template.userAgent,
+                template.maxRetries, timeout, unit);
+        fetch.addCallback(new VerificationCallback() {
+            public void onResponse(VerificationResponse response) {
+                try {
+                    result.complete(checkResponse(request, response));
+                } catch (YubicoVerificationException e) {
+                    result.fail(e);
+                } catch (YubicoValidationFailure e) {
+                    result.fail(e);
+                }
+            }
+
+            public void onFailure(Exception e) {
+                result.fail(e);
+            }
+        });
+        result.addCallback(new VerificationCallback() {
+            public void onResponse(VerificationResponse response) {
+            }
+
+            public void onFailure(Exception e) {
+                // Propagate cancellation to the outstanding requests.
+                fetch.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static Request createRequest(Template template, String otp) throws YubicoVerificationException {
+        if (!isValidOTPFormat(otp)) {
+            throw new IllegalArgumentException("The OTP is not a valid format");
         }
+        String nonce = template.nonceGenerator.nextNonce();
 
+        // Parameters in sorted order, as the signature requires.
+        StringBuilder query = new StringBuilder(template.queryPrefix.length() + 160);
+        appendEncoded(query.append(template.queryPrefix), nonce);
+        appendParameter(query, "otp", otp);
+        query.append(template.querySuffix);
 
-        String[] wsapiUrls = this.getWsapiUrls();
-        List<String> validationUrls = new ArrayList<String>();
-        for (String wsapiUrl : wsapiUrls) {
-            warnIfDeprecatedUrl(wsapiUrl);
-            validationUrls.add(wsapiUrl + "?" + queryString);
+        if (template.signer != null) {
+            sign(template.signer, query);
         }
+        String queryString = query.toString();
 
-        VerificationResponse response = validationService.fetch(validationUrls, userAgent, maxRetries);
+        List<String> validationUrls = new ArrayList<String>(template.urlPrefixes.length);
+        for (String urlPrefix : template.urlPrefixes) {
+            validationUrls.add(new StringBuilder(urlPrefix.length() + queryString.length())
+                    .append(urlPrefix).append(queryString).toString());
+        }
+        return new Request(template, otp, nonce, validationUrls);
+    }
 
-        if (key != null) {
-            verifySignature(response);
+    /**
+     * @return a copy of the configuration, with the parts of requests that only depend
+     * on it, reused for as long as the configuration is not changed
+     */
+    private Template getTemplate() {
+        Template current = template;
+        if (current == null) {
+            // Locked so that a copy of the old settings cannot replace the null set after a change.
+            synchronized (templateLock) {
+                current = template;
+                if (current == null) {
+                    current = new Template(this);
+                    template = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @Override
+    protected void settingsChanged() {
+        synchronized (templateLock) {
+            template = null;
+        }
+    }
+
+    @Override
+    protected void freeze() {
+        super.freeze();
+        // A built client is only read through this template, which is never replaced.
+        settingsChanged();
+        getTemplate();
+    }
+
+    /**
+     * @return the response, or a local REPLAYED_OTP response if its session counters went backwards
+     */
+    private static VerificationResponse checkResponse(Request request, VerificationResponse response) throws YubicoVerificationException, YubicoValidationFailure {
+        if (request.template.signer != null) {
+            verifySignature(request.template.signer, response);
         }
 
         // NONCE/OTP fields are not returned to the client when sending error codes.
         // If there is an error response, don't need to check them.
         if (!response.getStatus().isError()) {
-            if (response.getOtp() == null || !otp.equals(response.getOtp())) {
+            if (response.getOtp() == null || !request.otp.equals(response.getOtp())) {
                 throw new YubicoValidationFailure("OTP mismatch in response, is there a man-in-the-middle?");
             }
-            if (response.getNonce() == null || !nonce.equals(response.getNonce())) {
+            if (response.getNonce() == null || !request.nonce.equals(response.getNonce())) {
                 throw new YubicoValidationFailure("Nonce mismatch in response, is there a man-in-the-middle?");
             }
         }
+
+        SessionCounterTracker tracker = request.template.sessionCounterTracker;
+        if (tracker != null && response.getStatus() == OK && !isNewer(tracker, response)) {
+            log.warn("Validation server accepted OTP {} with old session counters, rejecting it as replayed.",
+                    request.otp);
+            response = new LocalVerificationResponse(REPLAYED_OTP, request.otp);
+        }
+
+        ReplayCache cache = request.template.replayCache;
+        if (cache != null && (response.getStatus() == OK || response.getStatus() == REPLAYED_OTP)) {
+            cache.add(request.otp);
+        }
         return response;
     }
 
-    private void verifySignature(VerificationResponse response) throws YubicoValidationFailure, YubicoVerificationException {
-        StringBuilder keyValueStr = new StringBuilder();
-        for (Entry<String, String> entry : response.getKeyValueMap().entrySet()) {
-            if ("h".equals(entry.getKey())) {
-                continue;
-            }
-            if (keyValueStr.length() > 0) {
-                keyValueStr.append("&");
+    /**
+     * @return false if the tracker has seen an OTP from the same YubiKey with counters not lower than the response's
+     */
+    private static boolean isNewer(SessionCounterTracker tracker, VerificationResponse response) {
+        int sessionCounter;
+        int sessionUse;
+        try {
+            sessionCounter = Integer.parseInt(response.getSessioncounter());
+            sessionUse = Integer.parseInt(response.getSessionuse());
+        } catch (NumberFormatException e) {
+            // Counters missing or malformed; nothing to compare.
+            return true;
+        }
+        if (sessionCounter < 0 || sessionCounter > 0xffff || sessionUse < 0 || sessionUse > 0xff) {
+            return true;
+        }
+        return tracker.update(response.getPublicId(), sessionCounter, sessionUse);
+    }
+
+    private static void verifySignature(HmacSigner signer, VerificationResponse response) throws YubicoValidationFailure, YubicoVerificationException {
+        ByteBuffer signed;
+        if (response instanceof VerificationResponseImpl) {
+            signed = ByteBuffer.wrap(((VerificationResponseImpl) response).getSignatureInput());
+        } else {
+            StringBuilder keyValueStr = new StringBuilder();
+            for (Entry<String, String> entry : response.getKeyValueMap().entrySet()) {
+                if ("h".equals(entry.getKey())) {
+                    continue;
+                }
+                if (keyValueStr.length() > 0) {
+                    keyValueStr.append("&");
+                }
+                keyValueStr
+                        .append(entry.getKey())
+                        .append("=")
+                        .append(entry.getValue());
             }
-            keyValueStr
-                    .append(entry.getKey())
-                    .append("=")
-                    .append(entry.getValue());
+            signed = ByteBuffer.wrap(keyValueStr.toString().getBytes(UTF8));
         }
         try {
-            String signature = Signature.calculate(keyValueStr.toString(), key).trim();
-            if (!response.getH().equals(signature) &&
+            if (!signer.verify(signed, response.getH()) &&
                     !response.getStatus().equals(BAD_SIGNATURE)) {
                 // don't throw a ValidationFailure if the server said bad signature, in that
                 // case we probably have the wrong key/id and want to check it.
@@ -177,14 +477,204 @@ public class YubicoClientImpl extends YubicoClient {
         }
     }
 
-    private String sign(String queryString) throws YubicoVerificationException {
+    private static void sign(HmacSigner signer, StringBuilder query) throws YubicoVerificationException {
         try {
-            queryString += "&h=" + URLEncoder.encode(Signature.calculate(queryString, key), "UTF-8");
+            appendParameter(query, "h", signer.sign(query.toString()));
         } catch (YubicoSignatureException e) {
             throw new YubicoVerificationException("Failed signing of request", e);
-        } catch (UnsupportedEncodingException e) {
-            throw new YubicoVerificationException("Failed to encode signature", e);
         }
-        return queryString;
+    }
+
+    /**
+     * A copy of the configuration of the client, with the parts of requests computed
+     * from it. Each validation reads the configuration only from the template it
+     * started with, so it is not affected by later changes to the client.
+     */
+    private static class Template {
+        private final Integer clientId;
+        private final byte[] key;
+        private final Integer sync;
+        private final String[] wsapiUrls;
+        private final String userAgent;
+        private final int maxRetries;
+        private final long timeoutMillis;
+        private final boolean coalesceRequests;
+        private final ReplayCache replayCache;
+        private final SessionCounterTracker sessionCounterTracker;
+        private final MetricsListener metricsListener;
+        private final NonceGenerator nonceGenerator;
+        /* "id=...&nonce=", followed by the nonce. */
+        private final String queryPrefix;
+        /* "[&sl=...]&timestamp=1", following the OTP. */
+        private final String querySuffix;
+        /* Each validation URL followed by "?". */
+        private final String[] urlPrefixes;
+        private final String flightPrefix;
+        private final HmacSigner signer;
+
+        Template(YubicoClientImpl client) {
+            this.clientId = client.clientId;
+            this.key = client.key == null ? null : client.key.clone();
+            this.sync = client.sync;
+            this.wsapiUrls = client.wsapi_urls.clone();
+            this.userAgent = client.userAgent;
+            this.maxRetries = client.maxRetries;
+            this.timeoutMillis = client.timeoutMillis;
+            this.coalesceRequests = client.coalesceRequests;
+            this.replayCache = client.replayCache;
+            this.sessionCounterTracker = client.sessionCounterTracker;
+            this.metricsListener = client.metricsListener;
+            this.nonceGenerator = client.nonceGenerator;
+            String id = clientId.toString();
+            this.queryPrefix = appendParameter(appendParameter(new StringBuilder(), "id", id), "nonce", "").toString();
+            StringBuilder suffix = new StringBuilder();
+            if (sync != null) {
+                appendParameter(suffix, "sl", sync.toString());
+            }
+            this.querySuffix = '&' + appendParameter(suffix, "timestamp", "1").toString();
+            this.urlPrefixes = new String[wsapiUrls.length];
+            for (int i = 0; i < wsapiUrls.length; i++) {
+                urlPrefixes[i] = wsapiUrls[i] + '?';
+            }
+            StringBuilder flight = new StringBuilder(id).append(':').append(keyDigest(key)).append(':')
+                    .append(sync).append(':');
+            for (String url : wsapiUrls) {
+                flight.append(url).append(' ');
+            }
+            this.flightPrefix = flight.append(':').toString();
+            this.signer = key == null ? null : new HmacSigner(key);
+        }
+
+        /**
+         * @return a digest identifying <code>key</code>, so that only clients checking
+         * responses with the same key share a validation, without keeping the key itself
+         */
+        private static String keyDigest(byte[] key) {
+            if (key == null) {
+                return "-";
+            }
+            try {
+                return new String(Base64.encodeBase64(MessageDigest.getInstance("SHA-256").digest(key)));
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A validation shared by the callers verifying the same OTP at the same time,
+     * with the same client ID, key, sync level and validation URLs. Each caller gets its
+     * own future; the requests are cancelled only once every caller has cancelled.
+     * The requests are sent with the time limit of the caller that started them,
+     * so a caller joining with a longer time limit may get "Validation timeout."
+     * before its own time limit has passed.
+     */
+    private static class Flight {
+        private final String key;
+        private final VerificationFuture result = new VerificationFuture();
+        private VerificationFuture source;
+        private int waiters;
+        private boolean abandoned;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        void start(VerificationFuture source) {
+            boolean cancelled;
+            synchronized (this) {
+                cancelled = abandoned;
+                this.source = source;
+            }
+            if (cancelled) {
+                source.cancel(true);
+                return;
+            }
+            source.addCallback(new VerificationCallback() {
+                public void onResponse(VerificationResponse response) {
+                    settle(response, null);
+                }
+
+                public void onFailure(Exception e) {
+                    settle(null, e);
+                }
+            });
+        }
+
+        void settle(VerificationResponse response, Exception failure) {
+            // Later validations of this OTP must not join a finished one.
+            inFlight.remove(key, this);
+            if (failure == null) {
+                result.complete(response);
+            } else {
+                result.fail(failure);
+            }
+        }
+
+        /**
+         * @return a future for one more caller, or null if the validation was abandoned
+         */
+        VerificationFuture join() {
+            synchronized (this) {
+                if (abandoned) {
+                    return null;
+                }
+                waiters++;
+            }
+            final VerificationFuture joined = new VerificationFuture();
+            joined.addCallback(new VerificationCallback() {
+                public void onResponse(VerificationResponse response) {
+                }
+
+                public void onFailure(Exception e) {
+                    if (joined.isCancelled()) {
+                        leave();
+                    }
+                }
+            });
+            result.addCallback(new VerificationCallback() {
+                public void onResponse(VerificationResponse response) {
+                    joined.complete(response);
+                }
+
+                public void onFailure(Exception e) {
+                    joined.fail(e);
+                }
+            });
+            return joined;
+        }
+
+        private void leave() {
+            VerificationFuture toCancel;
+            synchronized (this) {
+                if (--waiters > 0 || result.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                toCancel = source;
+            }
+            inFlight.remove(key, this);
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The parts of a validation request that the response is checked against.
+     */
+    private static class Request {
+        private final Template template;
+        private final String otp;
+        private final String nonce;
+        private final List<String> validationUrls;
+
+        Request(Template template, String otp, String nonce, List<String> validationUrls) {
+            this.template = template;
+            this.otp = otp;
+            this.nonce = nonce;
+            this.validationUrls = validationUrls;
+        }
     }
 }
@@ -0,0 +1,86 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testDelaysAreBoundedByBackoff() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 1000, 3600000, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 1000; i++) {
+            assertInRange(policy.getRetryDelayNanos(1, 0), 0, 100 * MS);
+            assertInRange(policy.getRetryDelayNanos(2, 0), 0, 200 * MS);
+            assertInRange(policy.getRetryDelayNanos(3, 0), 0, 400 * MS);
+            assertInRange(policy.getRetryDelayNanos(5, 0), 0, 1000 * MS);
+            assertInRange(policy.getRetryDelayNanos(100, 0), 0, 1000 * MS);
+            assertInRange(policy.getRetryDelayNanos(Integer.MAX_VALUE, 0), 0, 1000 * MS);
+        }
+    }
+
+    @Test
+    public void testDelaysAreJittered() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(1000, 1000, 10000, TimeUnit.MILLISECONDS);
+        long first = policy.getRetryDelayNanos(1, 0);
+        for (int i = 0; i < 100; i++) {
+            if (policy.getRetryDelayNanos(1, 0) != first) {
+                return;
+            }
+        }
+        throw new AssertionError("Expected random delays.");
+    }
+
+    @Test
+    public void testGivesUpAfterDeadline() {
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 1000, 5000, TimeUnit.MILLISECONDS);
+        assertEquals(-1, policy.getRetryDelayNanos(1, 5001 * MS));
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getRetryDelayNanos(4, 4900 * MS);
+            assertTrue(delay == -1 || delay <= 100 * MS);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMaxDelayBelowBaseDelay() {
+        new ExponentialBackoffRetryPolicy(100, 10, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertInRange(long value, long min, long max) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HmacSignerTest {
+
+    private static final byte[] KEY = Base64.decodeBase64("p38Z7DuEB/JC/LbDkkjmvMRB5GI=".getBytes());
+    private static final String DATA = "id=4711&nonce=0123456789abcdef&otp=cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj&timestamp=1";
+
+    private final HmacSigner signer = new HmacSigner(KEY);
+
+    @Test
+    public void testSignMatchesSignatureCalculate() throws Exception {
+        assertEquals(Signature.calculate(DATA, KEY), signer.sign(DATA));
+        assertEquals(Signature.calculate("", KEY), signer.sign(""));
+        assertEquals(Signature.calculate("åäö", KEY), signer.sign("åäö"));
+    }
+
+    @Test
+    public void testMacOfByteBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(("xx" + DATA + "yy").getBytes("UTF-8"));
+        buffer.position(2).limit(buffer.limit() - 2);
+        assertArrayEquals(Base64.decodeBase64(signer.sign(DATA).getBytes()), signer.mac(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        String signature = Signature.calculate(DATA, KEY);
+        assertTrue(signer.verify(DATA, signature));
+        assertTrue(signer.verify(DATA, signature + "\r\n"));
+        assertFalse(signer.verify(DATA + "&", signature));
+        assertFalse(signer.verify(DATA, signature.substring(1)));
+        assertFalse(signer.verify(DATA, null));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final String expected = Signature.calculate(DATA, KEY);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    for (int j = 0; j < 1000; j++) {
+                        if (!expected.equals(signer.sign(DATA))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testManyKeysOnOneThread() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 20; i++) {
+                byte[] key = KEY.clone();
+                key[0] = (byte) i;
+                assertEquals(Signature.calculate(DATA, key), new HmacSigner(key).sign(DATA));
+            }
+        }
+    }
+
+    @Test
+    public void testKeyIsCopied() throws Exception {
+        byte[] key = KEY.clone();
+        HmacSigner copied = new HmacSigner(key);
+        key[0]++;
+        assertEquals(Signature.calculate(DATA, KEY), copied.sign(DATA));
+        assertEquals(Signature.calculate(DATA, key), new HmacSigner(key).sign(DATA));
+    }
+}
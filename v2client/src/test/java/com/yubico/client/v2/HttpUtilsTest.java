@@ -0,0 +1,87 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpUtilsTest {
+
+    @Test
+    public void testAppendEncodedMatchesURLEncoder() throws Exception {
+        String[] values = {
+                "", "abcXYZ019", "-_.*", " ", "a b+c", "=&?/%#~!'()", "åäö",
+                "€", "🔑", "x\ud83d", "\udd11y", "\ud83d🔑", "å ä&ö", "\u0000\u007f"
+        };
+        for (String value : values) {
+            assertEncodedLikeURLEncoder(value);
+        }
+
+        Random random = new Random(4711);
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        chars[j] = (char) random.nextInt(0x80);
+                        break;
+                    case 1:
+                        chars[j] = (char) (0xd800 + random.nextInt(0x800));
+                        break;
+                    default:
+                        chars[j] = (char) random.nextInt(0x10000);
+                }
+            }
+            assertEncodedLikeURLEncoder(new String(chars));
+        }
+    }
+
+    @Test
+    public void testToQueryString() throws Exception {
+        Map<String, String> params = new TreeMap<String, String>();
+        params.put("timestamp", "1");
+        params.put("id", "4711");
+        params.put("otp", "cccccc fhcbelrhifnjrrddcgrburluurftrgfdrdifj");
+        params.put("nonce", "abc+/=");
+        assertEquals("id=4711&nonce=abc%2B%2F%3D&otp=cccccc+fhcbelrhifnjrrddcgrburluurftrgfdrdifj&timestamp=1",
+                HttpUtils.toQueryString(params));
+        assertEquals("", HttpUtils.toQueryString(new TreeMap<String, String>()));
+    }
+
+    private static void assertEncodedLikeURLEncoder(String value) throws Exception {
+        assertEquals(URLEncoder.encode(value, "UTF-8"), HttpUtils.appendEncoded(new StringBuilder(), value).toString());
+    }
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.impl.YubicoClientImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeepAliveHttpTransportTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    private StubValidationServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws IOException {
+        KeepAliveHttpTransport transport = new KeepAliveHttpTransport();
+        URL url = new URL(server.getUrl() + "?otp=" + OTP + "&nonce=abc");
+        for (int i = 0; i < 10; i++) {
+            drain(transport.get(url, "test", 1000, 1000));
+        }
+        assertEquals(10, server.getRequestCount());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, transport.getIdleConnectionCount());
+        transport.close();
+        assertEquals(0, transport.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testExpiredConnectionsAreNotReused() throws IOException {
+        KeepAliveHttpTransport transport = new KeepAliveHttpTransport(10, 0, TimeUnit.MILLISECONDS);
+        URL url = new URL(server.getUrl() + "?otp=" + OTP + "&nonce=abc");
+        for (int i = 0; i < 3; i++) {
+            drain(transport.get(url, "test", 1000, 1000));
+        }
+        assertEquals(3, server.getConnectionCount());
+        transport.closeIdleConnections();
+        assertEquals(0, transport.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testErrorStatusKeepsConnection() throws IOException {
+        KeepAliveHttpTransport transport = new KeepAliveHttpTransport();
+        try {
+            transport.get(new URL(server.getUrl().replace("/verify", "/nope")), "test", 1000, 1000);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+        drain(transport.get(new URL(server.getUrl() + "?otp=" + OTP), "test", 1000, 1000));
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void testSocketHostHasNoBrackets() throws IOException {
+        assertEquals("::1", KeepAliveHttpTransport.socketHost(new URL("https://[::1]:8443/wsapi/2.0/verify")));
+        assertEquals("api.yubico.com", KeepAliveHttpTransport.socketHost(new URL("https://api.yubico.com/wsapi/2.0/verify")));
+    }
+
+    @Test
+    public void testIpv6LiteralHost() throws IOException {
+        StubValidationServer ipv6Server;
+        try {
+            ipv6Server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()), "::1");
+        } catch (IOException e) {
+            Assume.assumeNoException("No IPv6 loopback", e);
+            return;
+        }
+        try {
+            KeepAliveHttpTransport transport = new KeepAliveHttpTransport();
+            URL url = new URL(ipv6Server.getUrl() + "?otp=" + OTP + "&nonce=abc");
+            assertTrue(url.getHost().startsWith("["));
+            drain(transport.get(url, "test", 1000, 1000));
+            drain(transport.get(url, "test", 1000, 1000));
+            assertEquals(2, ipv6Server.getRequestCount());
+            assertEquals(1, ipv6Server.getConnectionCount());
+            transport.close();
+        } finally {
+            ipv6Server.close();
+        }
+    }
+
+    @Test
+    public void testVerifyThroughKeepAliveTransport() throws Exception {
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY,
+                new VerificationRequester(new KeepAliveHttpTransport()));
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        for (int i = 0; i < 3; i++) {
+            VerificationResponse response = client.verify(OTP);
+            assertEquals(ResponseStatus.OK, response.getStatus());
+            assertEquals(OTP, response.getOtp());
+        }
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        while (in.read() != -1) {
+            // discard
+        }
+        in.close();
+    }
+}
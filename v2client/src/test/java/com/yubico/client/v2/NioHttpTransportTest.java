@@ -0,0 +1,430 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import com.yubico.client.v2.exceptions.YubicoVerificationException;
+import com.yubico.client.v2.impl.YubicoClientImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NioHttpTransportTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubValidationServer server;
+    private NioHttpTransport transport;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        transport = new NioHttpTransport();
+    }
+
+    @After
+    public void teardown() {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    public void testConcurrentVerifyWithoutPoolThreads() throws Exception {
+        server.setDelay(200, TimeUnit.MILLISECONDS);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) VerificationRequester.createExecutor(10, 10);
+        VerificationRequester requester = new VerificationRequester(transport, executor);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+
+        List<VerificationFuture> futures = new ArrayList<VerificationFuture>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.verifyAsync(OTP));
+        }
+        for (VerificationFuture future : futures) {
+            VerificationResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(ResponseStatus.OK, response.getStatus());
+            assertEquals(OTP, response.getOtp());
+        }
+        assertEquals(20, server.getRequestCount());
+        // The pool only completes each validation, it does not wait for it.
+        assertEquals(20, executor.getTaskCount());
+        requester.close();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBlockingCallbackDoesNotStallOtherRequests() throws Exception {
+        server.setDelay(200, TimeUnit.MILLISECONDS);
+        VerificationRequester requester = new VerificationRequester(transport);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        client.verifyAsync(OTP).addCallback(new VerificationCallback() {
+            public void onResponse(VerificationResponse response) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            public void onFailure(Exception e) {
+                blocked.countDown();
+            }
+        });
+        try {
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            assertEquals(ResponseStatus.OK, client.verifyAsync(OTP).get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            release.countDown();
+            requester.close();
+        }
+    }
+
+    @Test
+    public void testIpv6LiteralHost() throws Exception {
+        StubValidationServer ipv6Server;
+        try {
+            ipv6Server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()), "::1");
+        } catch (IOException e) {
+            Assume.assumeNoException("No IPv6 loopback", e);
+            return;
+        }
+        try {
+            InputStream body = transport.get(new URL(ipv6Server.getUrl() + "?otp=" + OTP + "&nonce=abc"), "test", 1000, 1000);
+            assertNotNull(body);
+            assertEquals(1, ipv6Server.getRequestCount());
+        } finally {
+            ipv6Server.close();
+        }
+    }
+
+    @Test
+    public void testCancelAbortsRequest() throws Exception {
+        server.setDelay(5, TimeUnit.SECONDS);
+        VerificationRequester requester = new VerificationRequester(transport);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        VerificationFuture future = client.verifyAsync(OTP);
+        Thread.sleep(100);
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        requester.close();
+    }
+
+    @Test
+    public void testFailedRequestIsRetried() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        String deadUrl = "http://127.0.0.1:" + socket.getLocalPort() + "/wsapi/2.0/verify";
+        socket.close();
+
+        MetricsRecorder metrics = new MetricsRecorder();
+        VerificationRequester requester = new VerificationRequester(transport);
+        requester.setMetricsListener(metrics);
+        requester.setRetryPolicy(new ExponentialBackoffRetryPolicy(1, 10, 1000, TimeUnit.MILLISECONDS));
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setMaxRetries(2);
+        client.setWsapiUrls(new String[] { deadUrl });
+        try {
+            client.verify(OTP);
+            fail("Expected a YubicoVerificationException to be thrown.");
+        } catch (YubicoVerificationException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(3, metrics.getRequestFailureCount(deadUrl));
+        assertEquals(2, metrics.getRetryCount(deadUrl));
+        requester.close();
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        URL url = serveOnce("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "6\r\nstatus\r\n3;x=y\r\n=OK\r\n0\r\n\r\n");
+        assertEquals("status=OK", read(transport.get(url, "test", 1000, 1000)));
+    }
+
+    @Test
+    public void testResponseEndingWithConnection() throws Exception {
+        URL url = serveOnce("HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\n\r\nstatus=OK");
+        assertEquals("status=OK", read(transport.get(url, "test", 1000, 1000)));
+    }
+
+    @Test
+    public void testTruncatedResponse() throws Exception {
+        URL url = serveOnce("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\nstatus=OK");
+        try {
+            transport.get(url, "test", 1000, 1000);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        try {
+            transport.get(new URL(server.getUrl().replace("/verify", "/nope")), "test", 1000, 1000);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testReadTimeout() throws Exception {
+        server.setDelay(2, TimeUnit.SECONDS);
+        transport.get(new URL(server.getUrl() + "?otp=" + OTP), "test", 1000, 100);
+    }
+
+    @Test
+    public void testTimeoutsExpireInOrder() throws Exception {
+        server.setDelay(3, TimeUnit.SECONDS);
+        URL url = new URL(server.getUrl() + "?otp=" + OTP);
+        final List<Integer> expired = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 20; i > 0; i--) {
+            final int readTimeout = i * 50;
+            transport.getAsync(url, "test", 1000, readTimeout, new AsyncHttpTransport.Callback() {
+                public void onResponse(InputStream body) {
+                    done.countDown();
+                }
+
+                public void onFailure(IOException e) {
+                    if (e instanceof SocketTimeoutException) {
+                        expired.add(readTimeout);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        List<Integer> sorted = new ArrayList<Integer>(expired);
+        Collections.sort(sorted);
+        assertEquals(20, expired.size());
+        assertEquals(sorted, expired);
+    }
+
+    @Test
+    public void testUnknownHostFailsWithoutBlockingCaller() throws Exception {
+        final AtomicReference<String> failedOn = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        transport.getAsync(new URL("http://unknown.invalid/wsapi/2.0/verify"), "test", 1000, 1000,
+                new AsyncHttpTransport.Callback() {
+                    public void onResponse(InputStream body) {
+                        done.countDown();
+                    }
+
+                    public void onFailure(IOException e) {
+                        if (e instanceof UnknownHostException) {
+                            failedOn.set(Thread.currentThread().getName());
+                        }
+                        done.countDown();
+                    }
+                });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(failedOn.get());
+        assertFalse(Thread.currentThread().getName().equals(failedOn.get()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testConnectionRefused() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        transport.get(new URL("http://127.0.0.1:" + port + "/wsapi/2.0/verify"), "test", 1000, 1000);
+    }
+
+    @Test(expected = IOException.class)
+    public void testClosedTransport() throws Exception {
+        transport.close();
+        transport.get(new URL(server.getUrl()), "test", 1000, 1000);
+    }
+
+    @Test
+    public void testHttps() throws Exception {
+        char[] password = "password".toCharArray();
+        File keyStoreFile = new File(folder.getRoot(), "localhost.p12");
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process;
+        try {
+            process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "localhost", "-keyalg", "RSA",
+                    "-keysize", "2048", "-dname", "CN=localhost", "-ext", "san=dns:localhost", "-validity", "1",
+                    "-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+                    "-storepass", "password", "-keypass", "password").redirectErrorStream(true).start();
+        } catch (IOException e) {
+            process = null;
+        }
+        Assume.assumeTrue(process != null && process.waitFor() == 0);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        FileInputStream in = new FileInputStream(keyStoreFile);
+        try {
+            keyStore.load(in, password);
+        } finally {
+            in.close();
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        final X509TrustManager trust = (X509TrustManager) trustManagers.getTrustManagers()[0];
+        final AtomicReference<String> checkedOn = new AtomicReference<String>();
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[] { new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                trust.checkClientTrusted(chain, authType);
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+                checkedOn.set(Thread.currentThread().getName());
+                trust.checkServerTrusted(chain, authType);
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return trust.getAcceptedIssuers();
+            }
+        } }, null);
+
+        HttpsServer https = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        https.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        https.createContext("/wsapi/2.0/verify", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "status=OK".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        https.start();
+        NioHttpTransport httpsTransport = new NioHttpTransport(1, clientContext);
+        try {
+            URL url = new URL("https://localhost:" + https.getAddress().getPort() + "/wsapi/2.0/verify?otp=" + OTP);
+            for (int i = 0; i < 3; i++) {
+                assertEquals("status=OK", read(httpsTransport.get(url, "test", 5000, 5000)));
+            }
+            // The certificate is checked by a delegated task, run on a worker thread instead of the selector thread.
+            assertTrue(checkedOn.get(), checkedOn.get().contains("-worker-"));
+        } finally {
+            httpsTransport.close();
+            https.stop(0);
+        }
+    }
+
+    /**
+     * Starts a server answering one request with the given raw response, then
+     * closing the connection.
+     */
+    private static URL serveOnce(final String response) throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, null);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    int matched = 0;
+                    while (matched < 4) {
+                        int b = in.read();
+                        if (b == -1) {
+                            break;
+                        }
+                        matched = (b == "\r\n\r\n".charAt(matched)) ? matched + 1 : (b == '\r' ? 1 : 0);
+                    }
+                    socket.getOutputStream().write(response.getBytes("ISO-8859-1"));
+                    socket.close();
+                    serverSocket.close();
+                } catch (IOException e) {
+                    // The test fails on its own.
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/wsapi/2.0/verify");
+    }
+
+    private static String read(InputStream in) throws IOException {
+        StringBuilder out = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.append((char) b);
+        }
+        in.close();
+        return out.toString();
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.junit.Test;
+
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RandomNonceGeneratorTest {
+
+    @Test
+    public void testNoncesAreHex() {
+        assertNonces(new RandomNonceGenerator());
+    }
+
+    @Test
+    public void testPerThreadNoncesAreHex() {
+        assertNonces(RandomNonceGenerator.perThread());
+    }
+
+    @Test
+    public void testNonceEncodesRandomBytes() {
+        SecureRandom counting = new SecureRandom() {
+            @Override
+            public void nextBytes(byte[] bytes) {
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) (0xf0 + i % 16);
+                }
+            }
+        };
+        assertEquals("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff", new RandomNonceGenerator(counting).nextNonce());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullRandomIsRejected() {
+        new RandomNonceGenerator(null);
+    }
+
+    private static void assertNonces(NonceGenerator generator) {
+        Set<String> nonces = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            String nonce = generator.nextNonce();
+            assertTrue(nonce, nonce.matches("[0-9a-f]{32}"));
+            nonces.add(nonce);
+        }
+        assertEquals(1000, nonces.size());
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayCacheTest {
+
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    @Test
+    public void testContainsAddedOtp() {
+        ReplayCache cache = new ReplayCache(100, 1, TimeUnit.MINUTES);
+        assertFalse(cache.contains(OTP));
+        cache.add(OTP);
+        assertTrue(cache.contains(OTP));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testOtpExpires() throws Exception {
+        ReplayCache cache = new ReplayCache(100, 50, TimeUnit.MILLISECONDS);
+        cache.add(OTP);
+        Thread.sleep(100);
+        assertFalse(cache.contains(OTP));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ReplayCache cache = new ReplayCache(160, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 10000; i++) {
+            cache.add(OTP + i);
+        }
+        assertTrue(cache.size() <= 160);
+        assertTrue(cache.contains(OTP + 9999));
+        assertFalse(cache.contains(OTP + 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveSize() {
+        new ReplayCache(0, 1, TimeUnit.MINUTES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveTtl() {
+        new ReplayCache(100, 0, TimeUnit.MINUTES);
+    }
+}
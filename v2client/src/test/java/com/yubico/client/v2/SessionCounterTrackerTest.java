@@ -0,0 +1,135 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionCounterTrackerTest {
+
+    private static final String PUBLIC_ID = "cccccccfhcbe";
+    private static final String OTHER_ID = "vvvvvvcurikv";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCountersMustIncrease() {
+        SessionCounterTracker tracker = new SessionCounterTracker(100);
+        assertTrue(tracker.update(PUBLIC_ID, 5, 3));
+        assertFalse(tracker.update(PUBLIC_ID, 5, 3));
+        assertFalse(tracker.update(PUBLIC_ID, 5, 2));
+        assertFalse(tracker.update(PUBLIC_ID, 4, 200));
+        assertTrue(tracker.update(PUBLIC_ID, 5, 4));
+        assertTrue(tracker.update(PUBLIC_ID, 6, 0));
+        assertEquals(1, tracker.size());
+    }
+
+    @Test
+    public void testYubiKeysAreTrackedSeparately() {
+        SessionCounterTracker tracker = new SessionCounterTracker(100);
+        assertTrue(tracker.update(PUBLIC_ID, 5, 3));
+        assertTrue(tracker.update(OTHER_ID, 1, 0));
+        assertTrue(tracker.update("c", 1, 0));
+        assertTrue(tracker.update("cc", 1, 0));
+        assertFalse(tracker.update("c", 1, 0));
+        assertEquals(4, tracker.size());
+    }
+
+    @Test
+    public void testUntrackablePublicIdsAreAccepted() {
+        SessionCounterTracker tracker = new SessionCounterTracker(100);
+        assertTrue(tracker.update("", 1, 0));
+        assertTrue(tracker.update("", 1, 0));
+        assertTrue(tracker.update("123456789012", 1, 0));
+        assertTrue(tracker.update("123456789012", 1, 0));
+        assertTrue(tracker.update("cccccccccccccccc", 1, 0));
+        assertTrue(tracker.update("cccccccccccccccc", 1, 0));
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testFullTrackerAcceptsNewYubiKeys() {
+        SessionCounterTracker tracker = new SessionCounterTracker(1);
+        assertTrue(tracker.update(PUBLIC_ID, 5, 3));
+        assertTrue(tracker.update(OTHER_ID, 1, 0));
+        assertTrue(tracker.update(OTHER_ID, 1, 0));
+        assertFalse(tracker.update(PUBLIC_ID, 5, 3));
+        assertEquals(1, tracker.size());
+    }
+
+    @Test
+    public void testFileKeepsCountersAcrossRestarts() throws IOException {
+        File file = new File(folder.getRoot(), "counters");
+        SessionCounterTracker tracker = SessionCounterTracker.open(file, 100);
+        assertTrue(tracker.update(PUBLIC_ID, 5, 3));
+        tracker.close();
+
+        SessionCounterTracker reopened = SessionCounterTracker.open(file, 10);
+        assertEquals(1, reopened.size());
+        assertFalse(reopened.update(PUBLIC_ID, 5, 3));
+        assertTrue(reopened.update(PUBLIC_ID, 5, 4));
+        reopened.close();
+    }
+
+    @Test
+    public void testOpenRejectsOtherFiles() throws IOException {
+        File file = folder.newFile("other");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[100]);
+        out.close();
+        try {
+            SessionCounterTracker.open(file, 100);
+            fail("Expected an IOException to be thrown.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a session counter file"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidSessionUse() {
+        new SessionCounterTracker(100).update(PUBLIC_ID, 1, 256);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveCapacity() {
+        new SessionCounterTracker(0);
+    }
+}
@@ -0,0 +1,197 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.yubico.client.v2.exceptions.YubicoSignatureException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for a ykval validation server. It answers every request
+ * with a signed response echoing the OTP and nonce of the request.
+ */
+public class StubValidationServer implements Closeable {
+
+    private final HttpServer server;
+    private final String host;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final byte[] key;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<String> connections = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile ResponseStatus status = ResponseStatus.OK;
+    private volatile long delayMillis = 0;
+    private volatile String lastQuery;
+    private volatile int[] sessionCounters;
+
+    static {
+        // Avoid Nagle/delayed ACK stalls on kept-alive connections.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public StubValidationServer(byte[] key) throws IOException {
+        this(key, "127.0.0.1");
+    }
+
+    /**
+     * @param address the loopback address to listen on, for example "::1"
+     */
+    public StubValidationServer(byte[] key, String address) throws IOException {
+        this.key = key;
+        this.host = address.indexOf(':') >= 0 ? "[" + address + "]" : address;
+        server = HttpServer.create(new InetSocketAddress(address, 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/wsapi/2.0/verify", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/wsapi/2.0/verify";
+    }
+
+    public void setStatus(ResponseStatus status) {
+        this.status = status;
+    }
+
+    public void setDelay(long delay, TimeUnit unit) {
+        this.delayMillis = unit.toMillis(delay);
+    }
+
+    /**
+     * Makes successful responses include the given session counter and session use.
+     */
+    public void setSessionCounters(int sessionCounter, int sessionUse) {
+        this.sessionCounters = new int[] { sessionCounter, sessionUse };
+    }
+
+    /**
+     * @return the raw query string of the last request received
+     */
+    public String getLastQuery() {
+        return lastQuery;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of distinct client connections seen
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        lastQuery = exchange.getRequestURI().getRawQuery();
+        connections.add(exchange.getRemoteAddress().toString());
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            Map<String, String> request = parseQuery(exchange.getRequestURI().getRawQuery());
+            Map<String, String> response = new TreeMap<String, String>();
+            response.put("t", "2026-01-01T00:00:00Z0000");
+            response.put("status", status.name());
+            if (!status.isError()) {
+                response.put("otp", request.get("otp"));
+                response.put("nonce", request.get("nonce"));
+                response.put("sl", "100");
+                int[] counters = sessionCounters;
+                if (counters != null) {
+                    response.put("sessioncounter", Integer.toString(counters[0]));
+                    response.put("sessionuse", Integer.toString(counters[1]));
+                }
+            }
+            StringBuilder signed = new StringBuilder();
+            for (Map.Entry<String, String> entry : response.entrySet()) {
+                if (signed.length() > 0) {
+                    signed.append('&');
+                }
+                signed.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            StringBuilder body = new StringBuilder();
+            body.append("h=").append(Signature.calculate(signed.toString(), key)).append("\r\n");
+            for (Map.Entry<String, String> entry : response.entrySet()) {
+                body.append(entry.getKey()).append('=').append(entry.getValue()).append("\r\n");
+            }
+            byte[] bytes = body.toString().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        } catch (InterruptedException e) {
+            exchange.close();
+        } catch (YubicoSignatureException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new TreeMap<String, String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int ix = pair.indexOf('=');
+                if (ix != -1) {
+                    params.put(pair.substring(0, ix), URLDecoder.decode(pair.substring(ix + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,603 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.exceptions.YubicoValidationFailure;
+import com.yubico.client.v2.exceptions.YubicoVerificationException;
+import com.yubico.client.v2.impl.YubicoClientImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VerificationRequesterTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    private StubValidationServer server;
+    private VerificationRequester requester;
+    private YubicoClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        requester = new VerificationRequester();
+        client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+    }
+
+    @After
+    public void teardown() {
+        requester.close();
+        server.close();
+    }
+
+    @Test
+    public void testVerifyAsync() throws Exception {
+        final List<VerificationResponse> responses = Collections.synchronizedList(new ArrayList<VerificationResponse>());
+        final CountDownLatch notified = new CountDownLatch(1);
+        VerificationFuture future = client.verifyAsync(OTP);
+        future.addCallback(new VerificationCallback() {
+            public void onResponse(VerificationResponse response) {
+                responses.add(response);
+                notified.countDown();
+            }
+
+            public void onFailure(Exception e) {
+                fail("Unexpected failure: " + e);
+            }
+        });
+        VerificationResponse response = future.get(10, TimeUnit.SECONDS);
+        assertEquals(ResponseStatus.OK, response.getStatus());
+        assertEquals(OTP, response.getOtp());
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+        assertEquals(1, responses.size());
+    }
+
+    @Test
+    public void testVerifyAsyncReportsValidationFailure() throws Exception {
+        client.setKey("bAX9u78e8BRHXPGDVV3lQUm4yVw=");
+        try {
+            client.verifyAsync(OTP).get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException to be thrown.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoValidationFailure);
+        }
+    }
+
+    @Test
+    public void testManyConcurrentVerifyAsync() throws Exception {
+        int count = 50;
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger ok = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            client.verifyAsync(OTP).addCallback(new VerificationCallback() {
+                public void onResponse(VerificationResponse response) {
+                    if (response.isOk()) {
+                        ok.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+
+                public void onFailure(Exception e) {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(count, ok.get());
+    }
+
+    @Test
+    public void testCallerSuppliedExecutor() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                threads.incrementAndGet();
+                return new Thread(r);
+            }
+        });
+        VerificationRequester requester = new VerificationRequester(new UrlConnectionTransport(), executor);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(threads.get() > 0);
+
+        requester.close();
+        assertFalse("caller-supplied executor must not be shut down", executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testBoundedExecutorRejectsExcessRequests() throws Exception {
+        server.setDelay(500, TimeUnit.MILLISECONDS);
+        VerificationRequester requester = new VerificationRequester(new UrlConnectionTransport(),
+                VerificationRequester.createExecutor(1, 1));
+        List<String> urls = Collections.singletonList(server.getUrl() + "?otp=" + OTP);
+
+        VerificationFuture running = requester.fetchAsync(urls, "test", 0);
+        VerificationFuture queued = requester.fetchAsync(urls, "test", 0);
+        VerificationFuture rejected = requester.fetchAsync(urls, "test", 0);
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException to be thrown.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoVerificationException);
+            assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(ResponseStatus.OK, running.get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(ResponseStatus.OK, queued.get(10, TimeUnit.SECONDS).getStatus());
+        requester.close();
+    }
+
+    @Test
+    public void testRejectedRequestDoesNotFailOthers() throws Exception {
+        StubValidationServer other = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        other.setDelay(300, TimeUnit.MILLISECONDS);
+        // One thread and no queue, so the second request of the validation is rejected.
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        VerificationRequester requester = new VerificationRequester(new UrlConnectionTransport(), executor);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl(), other.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        assertEquals(1, server.getRequestCount() + other.getRequestCount());
+        requester.close();
+        executor.shutdown();
+        other.close();
+    }
+
+    @Test
+    public void testVirtualThreadExecutor() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = VerificationRequester.createVirtualThreadExecutor();
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY,
+                new VerificationRequester(new UrlConnectionTransport(), executor));
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testHedgingSendsOneRequestToHealthyServers() throws Exception {
+        StubValidationServer other = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        VerificationRequester requester = new VerificationRequester();
+        requester.setHedging(true);
+        requester.setHedgeDelay(0.95, 5, 5, TimeUnit.SECONDS);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl(), other.getUrl() });
+
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            assertTrue(client.verify(OTP).isOk());
+        }
+        assertEquals(count, server.getRequestCount() + other.getRequestCount());
+        requester.close();
+        other.close();
+    }
+
+    @Test
+    public void testHedgingTriesNextServerWhenSlow() throws Exception {
+        StubValidationServer other = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        server.setDelay(5, TimeUnit.SECONDS);
+        VerificationRequester requester = new VerificationRequester();
+        requester.setHedging(true);
+        requester.setHedgeDelay(0.95, 50, 100, TimeUnit.MILLISECONDS);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl(), other.getUrl() });
+
+        long start = System.nanoTime();
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(1, other.getRequestCount());
+        requester.close();
+        other.close();
+    }
+
+    @Test
+    public void testHedgingTriesNextServerOnBackendError() throws Exception {
+        StubValidationServer other = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        server.setStatus(ResponseStatus.BACKEND_ERROR);
+        VerificationRequester requester = new VerificationRequester();
+        requester.setHedging(true);
+        requester.setHedgeDelay(0.95, 5, 5, TimeUnit.SECONDS);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl(), other.getUrl() });
+
+        long start = System.nanoTime();
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, other.getRequestCount());
+        requester.close();
+        other.close();
+    }
+
+    @Test
+    public void testCircuitBreakerSkipsFailingServer() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        String deadUrl = "http://127.0.0.1:" + socket.getLocalPort() + "/wsapi/2.0/verify";
+        socket.close();
+
+        VerificationRequester requester = new VerificationRequester();
+        requester.setCircuitBreaker(2, 1, TimeUnit.MINUTES);
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setMaxRetries(0);
+        client.setWsapiUrls(new String[] { deadUrl, server.getUrl() });
+        for (int i = 0; i < 10; i++) {
+            assertTrue(client.verify(OTP).isOk());
+        }
+
+        EndpointHealth dead = getHealth(requester, deadUrl);
+        assertEquals(EndpointHealth.State.OPEN, dead.getState());
+        // Requests already sent when the breaker opened may add a failure or two.
+        assertTrue(dead.getFailures() >= 2 && dead.getFailures() < 10);
+        assertTrue(dead.getScore() < 1.0);
+        EndpointHealth healthy = getHealth(requester, server.getUrl());
+        assertEquals(EndpointHealth.State.CLOSED, healthy.getState());
+        assertEquals(10, healthy.getSuccesses());
+        requester.close();
+    }
+
+    @Test
+    public void testCircuitBreakerProbeClosesBreaker() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        VerificationRequester requester = new VerificationRequester() {
+            @Override
+            protected VerifyTask createTask(String userAgent, String url, int maxRetries) {
+                return new VerifyTask(url, userAgent, maxRetries) {
+                    @Override
+                    public VerificationResponse call() throws Exception {
+                        calls.incrementAndGet();
+                        if (failing.get()) {
+                            throw new IOException("down");
+                        }
+                        return super.call();
+                    }
+                };
+            }
+        };
+        requester.setCircuitBreaker(1, 200, TimeUnit.MILLISECONDS);
+        List<String> urls = Collections.singletonList(server.getUrl() + "?otp=" + OTP);
+
+        try {
+            requester.fetch(urls, "test", 0);
+            fail("Expected a YubicoVerificationException to be thrown.");
+        } catch (YubicoVerificationException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(EndpointHealth.State.OPEN, getHealth(requester, server.getUrl()).getState());
+
+        Thread.sleep(300);
+        failing.set(false);
+        assertEquals(ResponseStatus.OK, requester.fetch(urls, "test", 0).getStatus());
+        assertEquals(EndpointHealth.State.CLOSED, getHealth(requester, server.getUrl()).getState());
+        assertEquals(2, calls.get());
+        requester.close();
+    }
+
+    @Test
+    public void testAllBreakersOpenTriesLeastRecentlyFailed() throws Exception {
+        final List<String> called = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        VerificationRequester requester = new VerificationRequester() {
+            @Override
+            protected VerifyTask createTask(String userAgent, final String url, int maxRetries) {
+                return new VerifyTask(url, userAgent, maxRetries) {
+                    @Override
+                    public VerificationResponse call() throws Exception {
+                        called.add(url);
+                        if (failing.get()) {
+                            throw new IOException("down");
+                        }
+                        return super.call();
+                    }
+                };
+            }
+        };
+        requester.setCircuitBreaker(1, 1, TimeUnit.MINUTES);
+        String firstUrl = server.getUrl();
+        String secondUrl = server.getUrl().replace("/verify", "/verify2");
+        String first = firstUrl + "?otp=" + OTP;
+        String second = secondUrl + "?otp=" + OTP;
+
+        for (String url : Arrays.asList(first, second)) {
+            try {
+                requester.fetch(Collections.singletonList(url), "test", 0);
+                fail("Expected a YubicoVerificationException to be thrown.");
+            } catch (YubicoVerificationException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        called.clear();
+        failing.set(false);
+        assertEquals(ResponseStatus.OK, requester.fetch(Arrays.asList(second, first), "test", 0).getStatus());
+        assertEquals(Collections.singletonList(first), called);
+        assertEquals(EndpointHealth.State.CLOSED, getHealth(requester, firstUrl).getState());
+        assertEquals(EndpointHealth.State.OPEN, getHealth(requester, secondUrl).getState());
+        requester.close();
+    }
+
+    @Test
+    public void testDeadlineTimeoutsDoNotOpenBreaker() throws Exception {
+        server.setDelay(1, TimeUnit.SECONDS);
+        List<String> urls = Collections.singletonList(server.getUrl() + "?otp=" + OTP);
+        for (VerificationRequester requester : Arrays.asList(new VerificationRequester(),
+                new VerificationRequester(new NioHttpTransport()))) {
+            requester.setCircuitBreaker(1, 1, TimeUnit.MINUTES);
+            for (int i = 0; i < 3; i++) {
+                try {
+                    requester.fetch(urls, "test", 0, 50, TimeUnit.MILLISECONDS);
+                    fail("Expected a YubicoVerificationException to be thrown.");
+                } catch (YubicoVerificationException e) {
+                    assertEquals("Validation timeout.", e.getMessage());
+                }
+            }
+            // The outcome of a request is recorded when it ends, after its timeout.
+            Thread.sleep(300);
+            EndpointHealth health = getHealth(requester, server.getUrl());
+            assertEquals(EndpointHealth.State.CLOSED, health.getState());
+            assertEquals(0, health.getFailures());
+            requester.close();
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerIsOffByDefault() throws Exception {
+        VerificationRequester requester = new VerificationRequester(new HttpTransport() {
+            public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+                throw new IOException("down");
+            }
+        });
+        List<String> urls = Collections.singletonList(server.getUrl() + "?otp=" + OTP);
+        for (int i = 0; i < 5; i++) {
+            try {
+                requester.fetch(urls, "test", 0);
+                fail("Expected a YubicoVerificationException to be thrown.");
+            } catch (YubicoVerificationException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(EndpointHealth.State.CLOSED, getHealth(requester, server.getUrl()).getState());
+        requester.close();
+    }
+
+    @Test
+    public void testCancelledRequestStopsRetrying() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        HttpTransport failing = new HttpTransport() {
+            public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+                attempts.incrementAndGet();
+                throw new IOException("down");
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        VerificationRequester requester = new VerificationRequester(failing, executor);
+        requester.setRetryPolicy(new RetryPolicy() {
+            public long getRetryDelayNanos(int retry, long elapsedNanos) {
+                return TimeUnit.SECONDS.toNanos(10);
+            }
+        });
+
+        VerificationFuture future = requester.fetchAsync(
+                Collections.singletonList(server.getUrl() + "?otp=" + OTP), "test", 5);
+        Thread.sleep(100);
+        future.cancel(true);
+        // The only pool thread must be released without waiting for the retry delay.
+        assertTrue(executor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(2, TimeUnit.SECONDS) == null);
+        assertEquals(1, attempts.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testVerifyTimesOut() throws Exception {
+        server.setDelay(3, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        try {
+            client.verify(OTP, 200, TimeUnit.MILLISECONDS);
+            fail("Expected a YubicoVerificationException to be thrown.");
+        } catch (YubicoVerificationException e) {
+            assertEquals("Validation timeout.", e.getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+
+    @Test
+    public void testVerifyAsyncTimesOut() throws Exception {
+        server.setDelay(3, TimeUnit.SECONDS);
+        client.setTimeout(200, TimeUnit.MILLISECONDS);
+        try {
+            client.verifyAsync(OTP).get(1500, TimeUnit.MILLISECONDS);
+            fail("Expected an ExecutionException to be thrown.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoVerificationException);
+            assertEquals("Validation timeout.", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testDeadlineLimitsReadTimeout() throws Exception {
+        server.setDelay(5, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        VerificationRequester requester = new VerificationRequester(new UrlConnectionTransport(), executor);
+        requester.fetchAsync(Collections.singletonList(server.getUrl() + "?otp=" + OTP), "test", 5,
+                300, TimeUnit.MILLISECONDS);
+        // The request must give up at the deadline instead of waiting for the default 15 second read timeout.
+        assertTrue(executor.submit(new Runnable() {
+            public void run() {
+            }
+        }).get(2, TimeUnit.SECONDS) == null);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDefaultRequesterIsSharedAndStaysOpen() throws Exception {
+        VerificationRequester shared = VerificationRequester.getDefault();
+        assertSame(shared, VerificationRequester.getDefault());
+        shared.close();
+
+        YubicoClient client = YubicoClient.getClient(4711, API_KEY);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+    }
+
+    @Test
+    public void testTransportFromSystemProperty() throws Exception {
+        CountingTransport.count.set(0);
+        System.setProperty(VerificationRequester.TRANSPORT_PROPERTY, CountingTransport.class.getName());
+        VerificationRequester requester;
+        try {
+            requester = new VerificationRequester();
+        } finally {
+            System.clearProperty(VerificationRequester.TRANSPORT_PROPERTY);
+        }
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        assertEquals(1, CountingTransport.count.get());
+        requester.close();
+    }
+
+    @Test
+    public void testUnknownTransportFallsBackToDefault() throws Exception {
+        System.setProperty(VerificationRequester.TRANSPORT_PROPERTY, "com.example.NoSuchTransport");
+        VerificationRequester requester;
+        try {
+            requester = new VerificationRequester();
+        } finally {
+            System.clearProperty(VerificationRequester.TRANSPORT_PROPERTY);
+        }
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        requester.close();
+    }
+
+    public static class CountingTransport extends UrlConnectionTransport {
+        static final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public InputStream get(URL url, String userAgent, int connectTimeout, int readTimeout) throws IOException {
+            count.incrementAndGet();
+            return super.get(url, userAgent, connectTimeout, readTimeout);
+        }
+    }
+
+    @Test
+    public void testRequestQueryIsUnchanged() throws Exception {
+        client.setSync(75);
+        String otp = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+        assertTrue(client.verify(otp).isOk());
+
+        String query = server.getLastQuery();
+        String nonce = query.replaceAll(".*nonce=([^&]*).*", "$1");
+        Map<String, String> params = new TreeMap<String, String>();
+        params.put("nonce", nonce);
+        params.put("id", "4711");
+        params.put("otp", otp);
+        params.put("timestamp", "1");
+        params.put("sl", "75");
+        String expected = "";
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (!expected.isEmpty()) {
+                expected += "&";
+            }
+            expected += entry.getKey() + "=" + URLEncoder.encode(entry.getValue(), "UTF-8");
+        }
+        expected += "&h=" + URLEncoder.encode(Signature.calculate(expected, Base64.decodeBase64(API_KEY.getBytes())), "UTF-8");
+        assertEquals(expected, query);
+    }
+
+    private static EndpointHealth getHealth(VerificationRequester requester, String url) {
+        for (EndpointHealth health : requester.getEndpointHealth()) {
+            if (health.getUrl().equals(url)) {
+                return health;
+            }
+        }
+        throw new AssertionError("No health for " + url);
+    }
+
+    @Test
+    public void testFetchAsyncFailsWhenAllUrlsFail() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+
+        VerificationFuture future = new VerificationRequester().fetchAsync(
+                Collections.singletonList("http://127.0.0.1:" + port + "/wsapi/2.0/verify"), "test", 0);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException to be thrown.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoVerificationException);
+            assertTrue(e.getCause().getCause() instanceof IOException);
+        }
+    }
+}
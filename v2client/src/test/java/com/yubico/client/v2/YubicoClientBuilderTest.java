@@ -0,0 +1,157 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2;
+
+import com.yubico.client.v2.exceptions.YubicoValidationFailure;
+import com.yubico.client.v2.impl.YubicoClientImpl;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class YubicoClientBuilderTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    private StubValidationServer server;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    @Test
+    public void testBuiltClientVerifies() throws Exception {
+        YubicoClient client = YubicoClient.builder()
+                .clientId(4711)
+                .key(API_KEY)
+                .sync(50)
+                .wsapiUrls(server.getUrl())
+                .maxRetries(2)
+                .timeout(10, TimeUnit.SECONDS)
+                .build();
+        assertTrue(client.verify(OTP).isOk());
+        String query = server.getLastQuery();
+        assertTrue(query, query.startsWith("id=4711&nonce="));
+        assertTrue(query, query.contains("&otp=" + OTP + "&sl=50&timestamp=1&h="));
+        assertTrue(client.verifyAsync(OTP).get(10, TimeUnit.SECONDS).isOk());
+    }
+
+    @Test
+    public void testBuiltClientChecksSignatures() throws Exception {
+        YubicoClient client = YubicoClient.builder()
+                .clientId(4711)
+                .key("bAX9u78e8BRHXPGDVV3lQUm4yVw=")
+                .wsapiUrls(server.getUrl())
+                .requester(new VerificationRequester())
+                .build();
+        try {
+            client.verify(OTP);
+            fail("Expected a YubicoValidationFailure to be thrown.");
+        } catch (YubicoValidationFailure e) {
+            assertEquals("Signatures do not match", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBuiltClientUsesNonceGenerator() throws Exception {
+        YubicoClient client = YubicoClient.builder()
+                .clientId(4711)
+                .key(API_KEY)
+                .wsapiUrls(server.getUrl())
+                .nonceGenerator(new NonceGenerator() {
+                    public String nextNonce() {
+                        return "0123456789abcdef0123";
+                    }
+                })
+                .build();
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(server.getLastQuery(), server.getLastQuery().startsWith("id=4711&nonce=0123456789abcdef0123&otp="));
+    }
+
+    @Test
+    public void testBuiltClientCannotBeChanged() {
+        String[] urls = { server.getUrl() };
+        YubicoClient client = YubicoClient.builder().clientId(4711).wsapiUrls(urls).build();
+        urls[0] = "https://example.com/wsapi/2.0/verify";
+        client.getWsapiUrls()[0] = "https://example.com/wsapi/2.0/verify";
+        assertArrayEquals(new String[] { server.getUrl() }, client.getWsapiUrls());
+        try {
+            client.setSync(100);
+            fail("Expected an UnsupportedOperationException to be thrown.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            client.setWsapiUrls(urls);
+            fail("Expected an UnsupportedOperationException to be thrown.");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClientIdIsRequired() {
+        YubicoClient.builder().key(API_KEY).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSettingsAreRejected() {
+        YubicoClient.builder().clientId(4711).maxRetries(-1).build();
+    }
+
+    @Test
+    public void testChangedClientUsesNewSettings() throws Exception {
+        YubicoClient client = new YubicoClientImpl(4711, API_KEY, new VerificationRequester());
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(server.getLastQuery(), server.getLastQuery().contains("&otp=" + OTP + "&timestamp=1&h="));
+
+        client.setSync(100);
+        client.setClientId(4712);
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(server.getLastQuery(), server.getLastQuery().startsWith("id=4712&nonce="));
+        assertTrue(server.getLastQuery(), server.getLastQuery().contains("&otp=" + OTP + "&sl=100&timestamp=1&h="));
+    }
+}
@@ -3,12 +3,16 @@ package com.yubico.client.v2;
 import com.yubico.client.v2.exceptions.YubicoValidationFailure;
 import com.yubico.client.v2.exceptions.YubicoVerificationException;
 import com.yubico.client.v2.impl.TestYubicoClientImpl;
+import com.yubico.client.v2.impl.VerificationResponseImpl;
 import com.yubico.client.v2.impl.YubicoClientImpl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -220,4 +224,44 @@ public class YubicoClientTest {
     	String resultPublicId = YubicoClient.getPublicId(testOtp);
     	assertEquals(testPublicId, resultPublicId);
     }
+
+    @Test
+    public void testDefaultMethodsOfSubclassesOnlyImplementingVerify() throws Exception {
+        String otp = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+        YubicoClient verifyOnly = new VerifyOnlyClient(0);
+        assertEquals(otp, verifyOnly.verifyAsync(otp).get().getOtp());
+        assertEquals(otp, verifyOnly.verify(otp, 10, TimeUnit.SECONDS).getOtp());
+        Map<String, VerificationFuture> results = verifyOnly.verifyAll(Collections.singletonList(otp));
+        assertEquals(ResponseStatus.OK, results.get(otp).get().getStatus());
+    }
+
+    @Test
+    public void testDefaultVerifyWithTimeLimit() throws Exception {
+        try {
+            new VerifyOnlyClient(2000).verify("cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj", 100, TimeUnit.MILLISECONDS);
+            fail("Expected a YubicoVerificationException.");
+        } catch (YubicoVerificationException e) {
+            assertEquals("Validation timeout.", e.getMessage());
+        }
+    }
+
+    /**
+     * A client written before the other validation methods were added.
+     */
+    private static class VerifyOnlyClient extends YubicoClient {
+        private final long delayMillis;
+
+        VerifyOnlyClient(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        public VerificationResponse verify(String otp) throws YubicoVerificationException, YubicoValidationFailure {
+            try {
+                Thread.sleep(delayMillis);
+                return new VerificationResponseImpl(new ByteArrayInputStream(("status=OK\r\notp=" + otp + "\r\n").getBytes("UTF-8")));
+            } catch (Exception e) {
+                throw new YubicoVerificationException("Exception while executing validation.", e);
+            }
+        }
+    }
 }
@@ -6,9 +6,11 @@ import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Map;
 
 import org.junit.Test;
 
+import com.yubico.client.v2.ResponseStatus;
 import com.yubico.client.v2.VerificationResponse;
 import com.yubico.client.v2.exceptions.YubicoInvalidResponse;
 
@@ -115,5 +117,60 @@ public class VerificationResponseImplTest {
     		fail("Encountered an exception");
     	}
     }
-}
+    @Test
+    public void testLineEndingsAndOddLines() throws Exception {
+        String testData = "status=OK\r\n" +
+                          "no separator\r" +
+                          "otp=cccccccfhcbeceeiinhjfjhfjutfvrjetfkjlhbduvdd\r" +
+                          "\r\n" +
+                          "t=a=b\n" +
+                          "=empty key\n" +
+                          "sl=";
+        VerificationResponseImpl response = new VerificationResponseImpl(new ByteArrayInputStream(testData.getBytes("UTF-8")));
+        assertEquals(ResponseStatus.OK, response.getStatus());
+        assertEquals("cccccccfhcbeceeiinhjfjhfjutfvrjetfkjlhbduvdd", response.getOtp());
+        assertEquals("a=b", response.getT());
+        assertEquals("", response.getSl());
+        assertEquals(5, response.getKeyValueMap().size());
+        assertEquals("empty key", response.getKeyValueMap().get(""));
+    }
+
+    @Test
+    public void testSignatureInputMatchesKeyValueMap() throws Exception {
+        String[] responses = {
+                "h=lPuwrWh8/5ZuRBN1q+v7/pCOfYo=\r\n" +
+                "t=2011-01-26T11:48:21Z0323\r\n" +
+                "otp=cccccccfhcbeceeiinhjfjhfjutfvrjetfkjlhbduvdd\r\n" +
+                "nonce=askjdnkagfdgdgdgggggggddddddddd\r\n" +
+                "sl=100\r\n" +
+                "status=OK\r\n" +
+                "\r\n",
+                "status=REPLAYED_OTP\nsessionuse=666\nh=x\nsessioncounter=42\ntimestamp=4711\n",
+                "status=BAD_OTP\nt=1\nt=2\nzz=åäö\nh=x\nh=y\na=\n",
+                "status=OK"
+        };
+        for (String data : responses) {
+            VerificationResponseImpl response = new VerificationResponseImpl(new ByteArrayInputStream(data.getBytes("UTF-8")));
+            StringBuilder expected = new StringBuilder();
+            for (Map.Entry<String, String> entry : response.getKeyValueMap().entrySet()) {
+                if ("h".equals(entry.getKey())) {
+                    continue;
+                }
+                if (expected.length() > 0) {
+                    expected.append("&");
+                }
+                expected.append(entry.getKey()).append("=").append(entry.getValue());
+            }
+            assertEquals(expected.toString(), new String(response.getSignatureInput(), "UTF-8"));
+        }
+    }
 
+    @Test
+    public void testDuplicateKeysUseLastValue() throws Exception {
+        String testData = "status=BAD_OTP\nt=1\nt=2\nstatus=OK\n";
+        VerificationResponseImpl response = new VerificationResponseImpl(new ByteArrayInputStream(testData.getBytes("UTF-8")));
+        assertEquals(ResponseStatus.OK, response.getStatus());
+        assertEquals("2", response.getT());
+        assertEquals("status=OK&t=2", new String(response.getSignatureInput(), "UTF-8"));
+    }
+}
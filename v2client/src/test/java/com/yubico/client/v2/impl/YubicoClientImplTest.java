@@ -0,0 +1,377 @@
+/* Copyright (c) 2026, Yubico AB.  All rights reserved.
+
+   Redistribution and use in source and binary forms, with or without
+   modification, are permitted provided that the following conditions
+   are met:
+
+   * Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+
+   * Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following
+     disclaimer in the documentation and/or other materials provided
+     with the distribution.
+
+   THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+   CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+   INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+   MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+   DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+   BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+   EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+   TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+   DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+   ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR
+   TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF
+   THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+   SUCH DAMAGE.
+*/
+
+package com.yubico.client.v2.impl;
+
+import com.yubico.client.v2.MetricsListener;
+import com.yubico.client.v2.MetricsRecorder;
+import com.yubico.client.v2.ReplayCache;
+import com.yubico.client.v2.ResponseStatus;
+import com.yubico.client.v2.SessionCounterTracker;
+import com.yubico.client.v2.StubValidationServer;
+import com.yubico.client.v2.VerificationFuture;
+import com.yubico.client.v2.VerificationRequester;
+import com.yubico.client.v2.VerificationResponse;
+import com.yubico.client.v2.YubicoClient;
+import com.yubico.client.v2.exceptions.YubicoValidationFailure;
+import com.yubico.client.v2.exceptions.YubicoVerificationException;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class YubicoClientImplTest {
+
+    private static final String API_KEY = "p38Z7DuEB/JC/LbDkkjmvMRB5GI=";
+    private static final String OTP = "cccccccfhcbelrhifnjrrddcgrburluurftrgfdrdifj";
+
+    private StubValidationServer server;
+    private VerificationRequester requester;
+    private YubicoClient client;
+
+    @Before
+    public void setup() throws IOException {
+        server = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        requester = new VerificationRequester();
+        client = new YubicoClientImpl(4711, API_KEY, requester);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+    }
+
+    @After
+    public void teardown() {
+        requester.close();
+        server.close();
+    }
+
+    @Test
+    public void testUrlsChangedInPlaceAreUsed() throws Exception {
+        assertTrue(client.verify(OTP).isOk());
+        StubValidationServer other = new StubValidationServer(Base64.decodeBase64(API_KEY.getBytes()));
+        try {
+            client.getWsapiUrls()[0] = other.getUrl();
+            assertTrue(client.verify(OTP).isOk());
+            assertEquals(1, server.getRequestCount());
+            assertEquals(1, other.getRequestCount());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testSettingsChangedDuringValidationApplyToTheNextOne() throws Exception {
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        VerificationFuture started = client.verifyAsync(OTP);
+        client.setKey("bAX9u78e8BRHXPGDVV3lQUm4yVw=");
+        assertEquals(ResponseStatus.OK, started.get(10, TimeUnit.SECONDS).getStatus());
+        try {
+            client.verify(OTP);
+            fail("Expected a YubicoValidationFailure to be thrown.");
+        } catch (YubicoValidationFailure e) {
+            assertEquals("Signatures do not match", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCoalescedVerifySharesOneRequest() throws Exception {
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        client.setCoalesceRequests(true);
+        int count = 5;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger ok = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        if (client.verify(OTP).isOk()) {
+                            ok.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // Counted as not ok.
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(count, ok.get());
+        assertEquals(1, server.getRequestCount());
+
+        // A validation after the shared one finished is sent again.
+        assertTrue(client.verify(OTP).isOk());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testCoalescedVerifyAsyncSurvivesOneCallerCancelling() throws Exception {
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        client.setCoalesceRequests(true);
+        VerificationRequester otherRequester = new VerificationRequester();
+        try {
+            YubicoClient other = new YubicoClientImpl(4711, API_KEY, otherRequester);
+            other.setWsapiUrls(new String[] { server.getUrl() });
+            other.setCoalesceRequests(true);
+            VerificationFuture first = client.verifyAsync(OTP);
+            VerificationFuture second = other.verifyAsync(OTP);
+            first.cancel(true);
+            assertTrue(first.isCancelled());
+            assertEquals(ResponseStatus.OK, second.get(10, TimeUnit.SECONDS).getStatus());
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            otherRequester.close();
+        }
+    }
+
+    @Test
+    public void testCoalescedVerifyIsNotSharedWithOtherKey() throws Exception {
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        client.setCoalesceRequests(true);
+        YubicoClient other = new YubicoClientImpl(4711, "bAX9u78e8BRHXPGDVV3lQUm4yVw=", requester);
+        other.setWsapiUrls(new String[] { server.getUrl() });
+        other.setCoalesceRequests(true);
+        VerificationFuture first = client.verifyAsync(OTP);
+        VerificationFuture second = other.verifyAsync(OTP);
+        assertEquals(ResponseStatus.OK, first.get(10, TimeUnit.SECONDS).getStatus());
+        try {
+            second.get(10, TimeUnit.SECONDS);
+            fail("Expected a YubicoValidationFailure.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoValidationFailure);
+            assertEquals("Signatures do not match", e.getCause().getMessage());
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testCoalescedVerifyAsyncCancelledByAllCallers() throws Exception {
+        server.setDelay(300, TimeUnit.MILLISECONDS);
+        client.setCoalesceRequests(true);
+        VerificationFuture first = client.verifyAsync(OTP);
+        VerificationFuture second = client.verifyAsync(OTP);
+        first.cancel(true);
+        second.cancel(true);
+
+        // A new validation does not join the abandoned one.
+        assertEquals(ResponseStatus.OK, client.verifyAsync(OTP).get(10, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    public void testReplayCacheRejectsRepeatedOtpLocally() throws Exception {
+        client.setReplayCache(new ReplayCache(100, 1, TimeUnit.MINUTES));
+        assertEquals(ResponseStatus.OK, client.verify(OTP).getStatus());
+        assertEquals(1, server.getRequestCount());
+
+        VerificationResponse replayed = client.verify(OTP);
+        assertEquals(ResponseStatus.REPLAYED_OTP, replayed.getStatus());
+        assertEquals(OTP, replayed.getOtp());
+        assertFalse(replayed.isOk());
+        assertEquals(ResponseStatus.REPLAYED_OTP, client.verifyAsync(OTP).get(10, TimeUnit.SECONDS).getStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testReplayCacheIgnoresFailedValidations() throws Exception {
+        client.setReplayCache(new ReplayCache(100, 1, TimeUnit.MINUTES));
+        client.setKey("bAX9u78e8BRHXPGDVV3lQUm4yVw=");
+        try {
+            client.verify(OTP);
+            fail("Expected a YubicoValidationFailure to be thrown.");
+        } catch (YubicoValidationFailure e) {
+            // The response signature did not match, so the OTP may not have been used.
+        }
+        client.setKey(API_KEY);
+        assertEquals(ResponseStatus.OK, client.verify(OTP).getStatus());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testSessionCounterTrackerRejectsOldCounters() throws Exception {
+        client.setSessionCounterTracker(new SessionCounterTracker(100));
+        server.setSessionCounters(5, 3);
+        assertEquals(ResponseStatus.OK, client.verify(OTP).getStatus());
+        server.setSessionCounters(5, 2);
+        assertEquals(ResponseStatus.REPLAYED_OTP, client.verify(OTP).getStatus());
+        assertEquals(ResponseStatus.REPLAYED_OTP, client.verifyAsync(OTP).get(10, TimeUnit.SECONDS).getStatus());
+        server.setSessionCounters(6, 0);
+        assertEquals(ResponseStatus.OK, client.verify(OTP).getStatus());
+    }
+
+    @Test
+    public void testVerifyAllSendsRequestsInParallel() throws Exception {
+        server.setDelay(400, TimeUnit.MILLISECONDS);
+        List<String> otps = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            otps.add(OTP.substring(0, OTP.length() - 1) + "cbde".charAt(i));
+        }
+        otps.add(otps.get(0));
+        long start = System.nanoTime();
+        Map<String, VerificationFuture> results = client.verifyAll(otps);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1200));
+        assertEquals(new ArrayList<String>(otps.subList(0, 4)), new ArrayList<String>(results.keySet()));
+        for (Map.Entry<String, VerificationFuture> entry : results.entrySet()) {
+            assertTrue(entry.getValue().isDone());
+            assertEquals(ResponseStatus.OK, entry.getValue().get().getStatus());
+            assertEquals(entry.getKey(), entry.getValue().get().getOtp());
+        }
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void testVerifyAllReportsEachOutcome() throws Exception {
+        String replayed = OTP.substring(0, OTP.length() - 1) + "c";
+        ReplayCache cache = new ReplayCache(100, 1, TimeUnit.HOURS);
+        cache.add(replayed);
+        client.setReplayCache(cache);
+        client.setKey("bAX9u78e8BRHXPGDVV3lQUm4yVw=");
+        Map<String, VerificationFuture> results = client.verifyAll(Arrays.asList(OTP, replayed));
+        try {
+            results.get(OTP).get();
+            fail("Expected a YubicoValidationFailure.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoValidationFailure);
+            assertEquals("Signatures do not match", e.getCause().getMessage());
+        }
+        assertEquals(ResponseStatus.REPLAYED_OTP, results.get(replayed).get().getStatus());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testVerifyAllFailsValidationsWithoutResultInTime() throws Exception {
+        server.setDelay(2, TimeUnit.SECONDS);
+        Map<String, VerificationFuture> results = client.verifyAll(Collections.singletonList(OTP),
+                200, TimeUnit.MILLISECONDS);
+        try {
+            results.get(OTP).get(0, TimeUnit.SECONDS);
+            fail("Expected a YubicoVerificationException.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof YubicoVerificationException);
+            assertEquals("Validation timeout.", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testVerifyAllRejectsInvalidOtpsBeforeSending() throws Exception {
+        try {
+            client.verifyAll(Arrays.asList(OTP, "invalid"));
+            fail("Expected an IllegalArgumentException to be thrown.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void testMetricsRecorderCountsValidations() throws Exception {
+        MetricsRecorder metrics = new MetricsRecorder();
+        requester.setMetricsListener(metrics);
+        client.setMetricsListener(metrics);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+
+        assertTrue(client.verify(OTP).isOk());
+        assertTrue(client.verifyAsync(OTP).get(10, TimeUnit.SECONDS).isOk());
+        server.setStatus(ResponseStatus.BAD_OTP);
+        assertEquals(ResponseStatus.BAD_OTP, client.verify(OTP).getStatus());
+
+        String endpoint = server.getUrl();
+        assertEquals(Collections.singleton(endpoint), metrics.getEndpoints());
+        assertEquals(3, metrics.getRequestCount(endpoint));
+        assertEquals(0, metrics.getRequestFailureCount(endpoint));
+        assertEquals(3, metrics.getRequestLatency(endpoint).getCount());
+        assertFetchCount(3, metrics, MetricsListener.Outcome.RESPONSE);
+        assertEquals(2, metrics.getVerifyCount(ResponseStatus.OK));
+        assertEquals(1, metrics.getVerifyCount(ResponseStatus.BAD_OTP));
+        assertEquals(3, metrics.getVerifyLatency().getCount());
+    }
+
+    @Test
+    public void testMetricsRecorderCountsRetriesAndTimeouts() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        String deadUrl = "http://127.0.0.1:" + socket.getLocalPort() + "/wsapi/2.0/verify";
+        socket.close();
+
+        MetricsRecorder metrics = new MetricsRecorder();
+        requester.setMetricsListener(metrics);
+        client.setMetricsListener(metrics);
+        client.setMaxRetries(1);
+        client.setWsapiUrls(new String[] { deadUrl });
+        try {
+            client.verify(OTP);
+            fail("Expected a YubicoVerificationException to be thrown.");
+        } catch (YubicoVerificationException e) {
+            // expected
+        }
+        assertEquals(2, metrics.getRequestCount(deadUrl));
+        assertEquals(2, metrics.getRequestFailureCount(deadUrl));
+        assertEquals(1, metrics.getRetryCount(deadUrl));
+        assertFetchCount(1, metrics, MetricsListener.Outcome.FAILURE);
+
+        server.setDelay(3, TimeUnit.SECONDS);
+        client.setWsapiUrls(new String[] { server.getUrl() });
+        try {
+            client.verify(OTP, 200, TimeUnit.MILLISECONDS);
+            fail("Expected a YubicoVerificationException to be thrown.");
+        } catch (YubicoVerificationException e) {
+            assertEquals("Validation timeout.", e.getMessage());
+        }
+        assertFetchCount(1, metrics, MetricsListener.Outcome.TIMEOUT);
+        assertEquals(2, metrics.getVerifyCount(null));
+    }
+
+    /**
+     * Waits a little for the count, since callbacks may run just after the result is available.
+     */
+    private static void assertFetchCount(long expected, MetricsRecorder metrics, MetricsListener.Outcome outcome)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (metrics.getFetchCount(outcome) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, metrics.getFetchCount(outcome));
+    }
+}